@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+import io.confluent.connect.hdfs.CommittedFileName;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConstants;
+
+/**
+ * Filtering the committed files of one topic partition out of {@code files} committed file names
+ * of eight partitions and taking the highest end offset, as recovery does, with the committed
+ * file name pattern and with {@link CommittedFileName}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommittedFileNameBenchmark {
+  private static final int PARTITIONS = 8;
+
+  @Param({"10000"})
+  public int files;
+
+  @Param({"8", "64"})
+  public int topicLength;
+
+  private String topic;
+  private String[] names;
+
+  @Setup
+  public void setUp() {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < topicLength) {
+      sb.append("topic_");
+    }
+    topic = sb.substring(0, topicLength);
+    names = new String[files];
+    for (int i = 0; i < files; ++i) {
+      long startOffset = (i / PARTITIONS) * 1000L;
+      names[i] = topic + "+" + (i % PARTITIONS) + "+" + String.format("%010d", startOffset)
+          + "+" + String.format("%010d", startOffset + 999) + ".avro";
+    }
+  }
+
+  @Benchmark
+  public long pattern() {
+    long maxOffset = -1L;
+    for (String name : names) {
+      // As the filters did: match once to accept, again to read the topic and partition, and
+      // once more to read the offset
+      if (!HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(name).matches()) {
+        continue;
+      }
+      Matcher m = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(name);
+      m.matches();
+      if (!m.group(HdfsSinkConnectorConstants.PATTERN_TOPIC_GROUP).equals(topic)
+          || Integer.parseInt(m.group(HdfsSinkConnectorConstants.PATTERN_PARTITION_GROUP)) != 0) {
+        continue;
+      }
+      Matcher offset = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(name);
+      offset.matches();
+      maxOffset = Math.max(
+          maxOffset,
+          Long.parseLong(offset.group(HdfsSinkConnectorConstants.PATTERN_END_OFFSET_GROUP))
+      );
+    }
+    return maxOffset;
+  }
+
+  @Benchmark
+  public long parser() {
+    long maxOffset = -1L;
+    for (String name : names) {
+      if (CommittedFileName.isCommittedFile(name, topic, 0)) {
+        maxOffset = Math.max(maxOffset, CommittedFileName.endOffset(name));
+      }
+    }
+    return maxOffset;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.benchmarks;
+
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+import io.confluent.connect.hdfs.wal.FSWAL;
+
+/**
+ * Replaying a WAL of {@code entries} entries, in transactions of {@value #FILES_PER_TRANSACTION}
+ * files, and truncating a WAL.
+ *
+ * <p>The temp files of the log do not exist, so replaying it checks every transaction without
+ * renaming anything and can be repeated on the same log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FSWALBenchmark {
+
+  private static final int FILES_PER_TRANSACTION = 10;
+  private static final String LOGS_DIR = "logs";
+  private static final TopicPartition APPLY_PARTITION = new TopicPartition("apply", 0);
+  private static final TopicPartition TRUNCATE_PARTITION = new TopicPartition("truncate", 0);
+
+  @Param({"1000", "100000"})
+  public int entries;
+
+  @Param({"64", "256"})
+  public int pathLength;
+
+  @Param({"false", "true"})
+  public boolean tailRecovery;
+
+  private HdfsStorage storage;
+  private Map<String, String> transaction;
+
+  @Setup
+  public void setUp(FileSystemState state) throws IOException {
+    HdfsSinkConnectorConfig connectorConfig = state.connectorConfig(Collections.singletonMap(
+        HdfsSinkConnectorConfig.WAL_TAIL_RECOVERY_CONFIG,
+        String.valueOf(tailRecovery)
+    ));
+    storage = new HdfsStorage(connectorConfig, state.url);
+    FSWAL wal = new FSWAL(LOGS_DIR, APPLY_PARTITION, storage);
+    try {
+      for (int i = 0; i < entries; i += FILES_PER_TRANSACTION) {
+        Map<String, String> files = new HashMap<>();
+        for (int j = i; j < Math.min(entries, i + FILES_PER_TRANSACTION); ++j) {
+          files.put(
+              state.fileName("topics/+tmp/apply/partition=" + j % 10, pathLength, j),
+              state.fileName("topics/apply/partition=" + j % 10, pathLength, j)
+          );
+        }
+        wal.appendTransaction(files);
+      }
+    } finally {
+      wal.close();
+    }
+
+    transaction = new HashMap<>();
+    for (int i = 0; i < FILES_PER_TRANSACTION; ++i) {
+      transaction.put(
+          state.fileName("topics/+tmp/truncate/partition=0", pathLength, i),
+          state.fileName("topics/truncate/partition=0", pathLength, i)
+      );
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    storage.close();
+  }
+
+  @Benchmark
+  public void apply() {
+    FSWAL wal = new FSWAL(LOGS_DIR, APPLY_PARTITION, storage);
+    try {
+      wal.apply();
+    } finally {
+      wal.close();
+    }
+  }
+
+  @Benchmark
+  public void truncate(TruncateState state) {
+    state.wal.truncate();
+  }
+
+  /**
+   * A WAL holding a single transaction, appended before each truncate.
+   */
+  @State(Scope.Thread)
+  public static class TruncateState {
+    FSWAL wal;
+
+    @Setup(Level.Invocation)
+    public void setUp(FSWALBenchmark benchmark) {
+      wal = new FSWAL(LOGS_DIR, TRUNCATE_PARTITION, benchmark.storage);
+      wal.appendTransaction(benchmark.transaction);
+    }
+  }
+}
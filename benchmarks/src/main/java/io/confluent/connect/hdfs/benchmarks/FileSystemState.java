@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.benchmarks;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.storage.common.StorageCommonConfig;
+
+/**
+ * The file system the benchmarks write to, either the local file system or a
+ * {@link MiniDFSCluster} with three data nodes.
+ */
+@State(Scope.Benchmark)
+public class FileSystemState {
+
+  @Param({"local", "hdfs"})
+  public String fileSystem;
+
+  File baseDir;
+  MiniDFSCluster cluster;
+  FileSystem fs;
+  String url;
+  HdfsSinkConnectorConfig connectorConfig;
+
+  @Setup
+  public void setUp() throws IOException {
+    baseDir = Files.createTempDirectory("kafka-connect-hdfs-benchmarks").toFile();
+    if ("hdfs".equals(fileSystem)) {
+      Configuration conf = new Configuration();
+      conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, baseDir.getPath());
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+      cluster.waitActive();
+      url = "hdfs://" + cluster.getNameNode().getClientNamenodeAddress();
+    } else {
+      url = baseDir.toURI().toString();
+      if (url.endsWith("/")) {
+        url = url.substring(0, url.length() - 1);
+      }
+    }
+
+    connectorConfig = connectorConfig(new HashMap<String, String>());
+    fs = FileSystem.newInstance(URI.create(url), connectorConfig.getHadoopConfiguration());
+  }
+
+  /**
+   * A connector configuration writing to the file system, with the given overrides.
+   */
+  HdfsSinkConnectorConfig connectorConfig(Map<String, String> overrides) {
+    Map<String, String> props = new HashMap<>();
+    props.put(HdfsSinkConnectorConfig.HDFS_URL_CONFIG, url);
+    props.put(StorageCommonConfig.STORE_URL_CONFIG, url);
+    props.put(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG, "3");
+    props.putAll(overrides);
+    HdfsSinkConnectorConfig config = new HdfsSinkConnectorConfig(props);
+    // The checksummed local file system does not support the appends of the WAL writer
+    Configuration hadoopConf = config.getHadoopConfiguration();
+    hadoopConf.set("fs.file.impl", RawLocalFileSystem.class.getName());
+    hadoopConf.setBoolean("fs.file.impl.disable.cache", true);
+    return config;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (fs != null) {
+      fs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown(true);
+    }
+    FileUtil.fullyDelete(baseDir);
+  }
+
+  /**
+   * A file name of the given length under the given directory of the file system.
+   */
+  String fileName(String dir, int length, int index) {
+    StringBuilder sb = new StringBuilder(url).append('/').append(dir).append('/');
+    String suffix = index + ".avro";
+    while (sb.length() + suffix.length() < length) {
+      sb.append('x');
+    }
+    return sb.append(suffix).toString();
+  }
+
+  Path path(String name) {
+    return new Path(url + "/" + name);
+  }
+}
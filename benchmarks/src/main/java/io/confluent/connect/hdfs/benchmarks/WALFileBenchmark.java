@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.benchmarks;
+
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.connect.hdfs.wal.WALEntry;
+import io.confluent.connect.hdfs.wal.WALFile;
+
+/**
+ * Appending single entries to a WAL file, with and without syncing them, and reading back a log
+ * of {@code entries} entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class WALFileBenchmark {
+
+  @Param({"1000", "100000"})
+  public int entries;
+
+  @Param({"64", "256"})
+  public int pathLength;
+
+  private WALEntry key;
+  private WALEntry value;
+  private Path readFile;
+  private Path writeFile;
+  private WALFile.Writer writer;
+  private int iteration = 0;
+
+  @Setup
+  public void setUp(FileSystemState state) throws IOException {
+    key = new WALEntry(state.fileName("topics/+tmp/topic/partition=0", pathLength, 0));
+    value = new WALEntry(state.fileName("topics/topic/partition=0", pathLength, 0));
+
+    readFile = state.path("logs/read/log");
+    WALFile.Writer readWriter = WALFile.createWriter(
+        state.connectorConfig,
+        WALFile.Writer.file(readFile)
+    );
+    try {
+      for (int i = 0; i < entries; ++i) {
+        readWriter.append(
+            new WALEntry(state.fileName("topics/+tmp/topic/partition=0", pathLength, i)),
+            new WALEntry(state.fileName("topics/topic/partition=0", pathLength, i))
+        );
+      }
+      readWriter.hsync();
+    } finally {
+      readWriter.close();
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void openWriter(FileSystemState state) throws IOException {
+    writeFile = state.path("logs/write/log." + iteration++);
+    writer = WALFile.createWriter(state.connectorConfig, WALFile.Writer.file(writeFile));
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeWriter(FileSystemState state) throws IOException {
+    writer.close();
+    state.fs.delete(writeFile, false);
+  }
+
+  @Benchmark
+  public void append() throws IOException {
+    writer.append(key, value);
+  }
+
+  @Benchmark
+  public void appendAndHsync() throws IOException {
+    writer.append(key, value);
+    writer.hsync();
+  }
+
+  @Benchmark
+  public int read(FileSystemState state) throws IOException {
+    WALFile.Reader reader = new WALFile.Reader(
+        state.connectorConfig.getHadoopConfiguration(),
+        WALFile.Reader.file(readFile)
+    );
+    try {
+      WALEntry readKey = new WALEntry();
+      WALEntry readValue = new WALEntry();
+      int count = 0;
+      while (reader.next(readKey, readValue)) {
+        ++count;
+      }
+      return count;
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.storage.DirectoryTraversal;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+/**
+ * A task-scoped index of the committed files of each topic, so that the partitions of a topic
+ * and the Hive sync share a single listing of the topic directory instead of each listing it in
+ * turn. A topic is listed the first time it is looked up. Files committed through the storage
+ * afterwards are added to the index as they are committed, but files committed by other tasks
+ * are not, so the index is cleared whenever the task recovers its partitions.
+ */
+public class CommittedFileIndex {
+  private final HdfsStorage storage;
+  private final String topicsDir;
+  private final Map<String, TopicIndex> topics;
+
+  public CommittedFileIndex(HdfsStorage storage, String topicsDir) {
+    this.storage = storage;
+    this.topicsDir = topicsDir;
+    this.topics = new HashMap<>();
+  }
+
+  /**
+   * Returns the committed file with the highest end offset of the given topic partition, or null
+   * if it has none.
+   */
+  public Path fileWithMaxOffset(TopicPartition tp) {
+    TopicIndex index = topic(tp.topic());
+    synchronized (index) {
+      return index.partitions.get(tp.partition());
+    }
+  }
+
+  /**
+   * Returns the committed file with the highest end offset of any partition of the given topic,
+   * or null if it has none.
+   */
+  public Path fileWithMaxOffset(String topic) {
+    TopicIndex index = topic(topic);
+    synchronized (index) {
+      return index.newest;
+    }
+  }
+
+  /**
+   * Returns the directories of the given topic that have no subdirectories, as in
+   * {@link FileUtils#getDirectories}.
+   */
+  public List<Path> getDirectories(String topic) {
+    TopicIndex index = topic(topic);
+    synchronized (index) {
+      return new ArrayList<>(index.directories.values());
+    }
+  }
+
+  /**
+   * Adds a file that was just committed to the index of its topic, if that topic was listed
+   * already. Any other file is ignored.
+   */
+  public void committed(Path file) {
+    if (!CommittedFileName.isCommittedFile(file.getName())) {
+      return;
+    }
+    String topic = CommittedFileName.topic(file.getName());
+    TopicIndex index;
+    synchronized (this) {
+      index = topics.get(topic);
+    }
+    if (index == null) {
+      return;
+    }
+    synchronized (index) {
+      // A topic that is being listed holds its lock, so the file is either listed or added here
+      if (index.listed && isBelow(file, index.dir)) {
+        index.add(file, CommittedFileName.partition(file.getName()));
+        index.addDirectory(file.getParent());
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    topics.clear();
+  }
+
+  private TopicIndex topic(String topic) {
+    TopicIndex index;
+    synchronized (this) {
+      index = topics.get(topic);
+      if (index == null) {
+        index = new TopicIndex(
+            topic,
+            new Path(FileUtils.topicDirectory(storage.url(), topicsDir, topic))
+        );
+        topics.put(topic, index);
+      }
+    }
+    synchronized (index) {
+      if (!index.listed) {
+        storage.traversal().traverse(index.dir, new Listing(index));
+        index.listed = true;
+      }
+    }
+    return index;
+  }
+
+  private static boolean isBelow(Path file, Path dir) {
+    String prefix = Path.getPathWithoutSchemeAndAuthority(dir).toString() + "/";
+    return Path.getPathWithoutSchemeAndAuthority(file).toString().startsWith(prefix);
+  }
+
+  /**
+   * The committed files of a topic.
+   */
+  private static class TopicIndex {
+    private final String topic;
+    private final Path dir;
+    private final Map<Integer, Path> partitions;
+    private final Map<String, Path> directories;
+    private Path newest;
+    private boolean listed;
+
+    TopicIndex(String topic, Path dir) {
+      this.topic = topic;
+      this.dir = dir;
+      this.partitions = new HashMap<>();
+      this.directories = new LinkedHashMap<>();
+    }
+
+    private void add(Path file, int partition) {
+      long offset = FileUtils.extractOffset(file.getName());
+      Path current = partitions.get(partition);
+      if (current == null || offset > FileUtils.extractOffset(current.getName())) {
+        partitions.put(partition, file);
+      }
+      if (newest == null || offset > FileUtils.extractOffset(newest.getName())) {
+        newest = file;
+      }
+    }
+
+    private void addDirectory(Path directory) {
+      String key = Path.getPathWithoutSchemeAndAuthority(directory).toString();
+      if (!directories.containsKey(key)) {
+        directories.put(key, directory);
+      }
+    }
+  }
+
+  /**
+   * Lists a topic directory into its index. The thread that lists the topic holds the lock of
+   * the index, so directories listed in parallel are added under the lock of the listing instead.
+   */
+  private static class Listing implements DirectoryTraversal.Collector<Listing> {
+    private final TopicIndex index;
+
+    Listing(TopicIndex index) {
+      this.index = index;
+    }
+
+    @Override
+    public Listing empty() {
+      return this;
+    }
+
+    @Override
+    public synchronized Listing file(Listing result, FileStatus file) {
+      String name = file.getPath().getName();
+      if (CommittedFileName.isCommittedFile(name, index.topic)) {
+        index.add(file.getPath(), CommittedFileName.partition(name));
+      }
+      return this;
+    }
+
+    @Override
+    public synchronized Listing leaf(Listing result, FileStatus directory) {
+      index.addDirectory(directory.getPath());
+      return this;
+    }
+
+    @Override
+    public Listing merge(Listing result, Listing child) {
+      return this;
+    }
+  }
+}
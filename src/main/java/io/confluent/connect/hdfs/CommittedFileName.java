@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+/**
+ * Parses committed file names of the form {@code topic+partition+startOffset+endOffset.ext} in a
+ * single pass and without allocating, accepting exactly the names that
+ * {@link HdfsSinkConnectorConstants#COMMITTED_FILENAME_PATTERN} matches. Recovery checks every
+ * file of a topic directory, where matching the pattern, often several times per file, is a
+ * noticeable share of the time.
+ */
+public final class CommittedFileName {
+
+  private CommittedFileName() {}
+
+  public static boolean isCommittedFile(String name) {
+    return endOffsetEnd(name) >= 0;
+  }
+
+  public static boolean isCommittedFile(String name, String topic) {
+    return endOffsetEnd(name) >= 0
+        && name.indexOf('+') == topic.length()
+        && name.startsWith(topic);
+  }
+
+  public static boolean isCommittedFile(String name, String topic, int partition) {
+    return isCommittedFile(name, topic) && partition(name) == partition;
+  }
+
+  public static String topic(String name) {
+    check(name);
+    return name.substring(0, name.indexOf('+'));
+  }
+
+  public static int partition(String name) {
+    check(name);
+    int begin = name.indexOf('+') + 1;
+    long partition = parse(name, begin, name.indexOf('+', begin));
+    if (partition > Integer.MAX_VALUE) {
+      throw new NumberFormatException("Partition out of range in " + name);
+    }
+    return (int) partition;
+  }
+
+  public static long startOffset(String name) {
+    check(name);
+    int begin = name.indexOf('+', name.indexOf('+') + 1) + 1;
+    return parse(name, begin, name.indexOf('+', begin));
+  }
+
+  public static long endOffset(String name) {
+    int end = endOffsetEnd(name);
+    if (end < 0) {
+      throw new IllegalArgumentException(name + " does not match COMMITTED_FILENAME_PATTERN");
+    }
+    return parse(name, name.lastIndexOf('+', end - 1) + 1, end);
+  }
+
+  private static void check(String name) {
+    if (endOffsetEnd(name) < 0) {
+      throw new IllegalArgumentException(name + " does not match COMMITTED_FILENAME_PATTERN");
+    }
+  }
+
+  /**
+   * Returns the index just past the end offset of the given name, or -1 if it is not the name of
+   * a committed file.
+   */
+  private static int endOffsetEnd(String name) {
+    int topicEnd = name.indexOf('+');
+    if (topicEnd <= 0) {
+      return -1;
+    }
+    for (int i = 0; i < topicEnd; ++i) {
+      if (!isTopicChar(name.charAt(i))) {
+        return -1;
+      }
+    }
+    int partitionEnd = digits(name, topicEnd + 1);
+    if (partitionEnd == topicEnd + 1
+        || partitionEnd == name.length()
+        || name.charAt(partitionEnd) != '+') {
+      return -1;
+    }
+    int startOffsetEnd = digits(name, partitionEnd + 1);
+    if (startOffsetEnd == partitionEnd + 1
+        || startOffsetEnd == name.length()
+        || name.charAt(startOffsetEnd) != '+') {
+      return -1;
+    }
+    int endOffsetBegin = startOffsetEnd + 1;
+    int endOffsetEnd = digits(name, endOffsetBegin);
+    if (endOffsetEnd == endOffsetBegin) {
+      return -1;
+    }
+    if (endOffsetEnd == name.length()) {
+      return endOffsetEnd;
+    }
+    // The extension is any character but a line terminator followed by word characters. Like the
+    // pattern, fall back to taking the last digit of the offset as that first character.
+    if (endOffsetEnd + 1 < name.length()
+        && !isLineTerminator(name.charAt(endOffsetEnd))
+        && isWord(name, endOffsetEnd + 1)) {
+      return endOffsetEnd;
+    }
+    if (endOffsetEnd - endOffsetBegin > 1 && isWord(name, endOffsetEnd)) {
+      return endOffsetEnd - 1;
+    }
+    return -1;
+  }
+
+  private static int digits(String name, int begin) {
+    int end = begin;
+    while (end < name.length() && isDigit(name.charAt(end))) {
+      ++end;
+    }
+    return end;
+  }
+
+  private static long parse(String name, int begin, int end) {
+    long value = 0;
+    for (int i = begin; i < end; ++i) {
+      int digit = name.charAt(i) - '0';
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        throw new NumberFormatException("Offset out of range in " + name);
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static boolean isWord(String name, int begin) {
+    for (int i = begin; i < name.length(); ++i) {
+      char c = name.charAt(i);
+      if (!isDigit(c) && !isLetter(c) && c != '_') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isTopicChar(char c) {
+    return isDigit(c) || isLetter(c) || c == '.' || c == '_' || c == '-';
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+}
@@ -26,21 +26,28 @@ import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.apache.kafka.connect.sink.SinkTaskContext;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -54,20 +61,29 @@ import io.confluent.connect.hdfs.filter.CommittedFileFilter;
 import io.confluent.connect.hdfs.filter.TopicCommittedFileFilter;
 import io.confluent.connect.hdfs.hive.HiveMetaStore;
 import io.confluent.connect.hdfs.hive.HiveUtil;
+import io.confluent.connect.hdfs.metrics.HdfsSinkMetrics;
 import io.confluent.connect.hdfs.partitioner.Partitioner;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.hdfs.storage.Storage;
 import io.confluent.connect.storage.common.StorageCommonConfig;
 import io.confluent.connect.storage.format.SchemaFileReader;
 import io.confluent.connect.storage.hive.HiveConfig;
+import io.confluent.connect.storage.partitioner.DailyPartitioner;
+import io.confluent.connect.storage.partitioner.HourlyPartitioner;
 import io.confluent.connect.storage.partitioner.PartitionerConfig;
+import io.confluent.connect.storage.partitioner.TimeBasedPartitioner;
+import io.confluent.connect.storage.partitioner.TimestampExtractor;
 
 public class DataWriter {
   private static final Logger log = LoggerFactory.getLogger(DataWriter.class);
   private static final Time SYSTEM_TIME = new SystemTime();
+  // Keeps a partition from being resumed by the put() right after the one that paused it
+  private static final long MIN_THROTTLE_MS = 1000L;
   private final Time time;
 
   private Map<TopicPartition, TopicPartitionWriter> topicPartitionWriters;
+  // The same writers by topic, indexed by partition, to dispatch records without allocating
+  private Map<String, TopicPartitionWriter[]> writersByTopic;
   private String url;
   private HdfsStorage storage;
   private String topicsDir;
@@ -90,6 +106,12 @@ public class DataWriter {
   private HiveUtil hive;
   private Queue<Future<Void>> hiveUpdateFutures;
   private boolean hiveIntegration;
+  private ExecutorService writeExecutor;
+  private ExecutorService commitExecutor;
+  private ExecutorService recoveryExecutor;
+  private HdfsSinkMetrics metrics;
+  private OpenWriters openWriters;
+  private long memoryBudget;
   private Thread ticketRenewThread;
   private volatile boolean isRunning;
 
@@ -308,29 +330,39 @@ public class DataWriter {
           throw new ConnectException("One of old or new format classes must be provided");
         }
         executorService = Executors.newSingleThreadExecutor();
-        hiveUpdateFutures = new LinkedList<>();
+        // Topic partition writers may add futures concurrently when writing in parallel
+        hiveUpdateFutures = new ConcurrentLinkedQueue<>();
       }
 
+      int writeThreads = connectorConfig.getInt(HdfsSinkConnectorConfig.WRITE_THREADS_CONFIG);
+      if (writeThreads > 1) {
+        log.info("Writing topic partitions in parallel with {} threads.", writeThreads);
+        writeExecutor = Executors.newFixedThreadPool(writeThreads);
+      }
+      int recoveryThreads = connectorConfig.getInt(
+          HdfsSinkConnectorConfig.RECOVERY_THREADS_CONFIG
+      );
+      if (recoveryThreads > 1) {
+        log.info("Recovering topic partitions in parallel with {} threads.", recoveryThreads);
+        recoveryExecutor = Executors.newFixedThreadPool(recoveryThreads);
+      }
+      openWriters = new OpenWriters(
+          connectorConfig.getInt(HdfsSinkConnectorConfig.MAX_OPEN_WRITERS_CONFIG)
+      );
+      memoryBudget = connectorConfig.getLong(HdfsSinkConnectorConfig.MEMORY_BUDGET_BYTES_CONFIG);
+      if (connectorConfig.getBoolean(HdfsSinkConnectorConfig.ASYNC_COMMIT_CONFIG)) {
+        int commitThreads = connectorConfig.getInt(HdfsSinkConnectorConfig.COMMIT_THREADS_CONFIG);
+        log.info("Committing files in the background with {} threads.", commitThreads);
+        commitExecutor = Executors.newFixedThreadPool(commitThreads);
+      }
+
+      metrics = new HdfsSinkMetrics(connectorConfig.getName(), connectorConfig.getTaskId());
+
       topicPartitionWriters = new HashMap<>();
       for (TopicPartition tp : assignment) {
-        TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
-            tp,
-            storage,
-            writerProvider,
-            newWriterProvider,
-            partitioner,
-            connectorConfig,
-            context,
-            avroData,
-            hiveMetaStore,
-            hive,
-            schemaFileReader,
-            executorService,
-            hiveUpdateFutures,
-            time
-        );
-        topicPartitionWriters.put(tp, topicPartitionWriter);
+        topicPartitionWriters.put(tp, newTopicPartitionWriter(tp));
       }
+      updateDispatch();
     } catch (ClassNotFoundException
             | IllegalAccessException
             | InstantiationException
@@ -344,12 +376,42 @@ public class DataWriter {
   }
 
   public void write(Collection<SinkRecord> records) {
+    // Group the records by topic partition in one pass, and hand each group over as a block
+    Map<TopicPartitionWriter, List<SinkRecord>> batches = new HashMap<>();
+    String topic = null;
+    TopicPartitionWriter[] topicWriters = null;
+    TopicPartitionWriter topicPartitionWriter = null;
+    List<SinkRecord> batch = null;
     for (SinkRecord record : records) {
-      String topic = record.topic();
+      if (!record.topic().equals(topic)) {
+        topic = record.topic();
+        topicWriters = writersByTopic.get(topic);
+      }
       int partition = record.kafkaPartition();
-      TopicPartition tp = new TopicPartition(topic, partition);
-      topicPartitionWriters.get(tp).buffer(record);
+      TopicPartitionWriter writer = topicWriters != null && partition < topicWriters.length
+                                    ? topicWriters[partition]
+                                    : null;
+      if (writer == null) {
+        throw new ConnectException(
+            "Received a record for topic partition " + topic + "-" + partition
+                + " which is not assigned to this task"
+        );
+      }
+      if (writer != topicPartitionWriter) {
+        topicPartitionWriter = writer;
+        batch = batches.get(writer);
+        if (batch == null) {
+          batch = new ArrayList<>();
+          batches.put(writer, batch);
+        }
+      }
+      batch.add(record);
     }
+    for (Map.Entry<TopicPartitionWriter, List<SinkRecord>> entry : batches.entrySet()) {
+      entry.getKey().buffer(entry.getValue());
+    }
+    // Measured before the buffers are drained, which is when the task holds the most memory
+    applyMemoryBudget();
 
     if (hiveIntegration) {
       Iterator<Future<Void>> iterator = hiveUpdateFutures.iterator();
@@ -370,16 +432,139 @@ public class DataWriter {
       }
     }
 
+    // Partitions without records only need a write when a retry or a rotation is due
+    List<TopicPartitionWriter> writers = new ArrayList<>(topicPartitionWriters.size());
+    for (TopicPartitionWriter writer : topicPartitionWriters.values()) {
+      if (writer.needsWrite()) {
+        writers.add(writer);
+      }
+    }
+
+    try {
+      if (writeExecutor == null || writers.size() <= 1) {
+        for (TopicPartitionWriter writer : writers) {
+          writer.write();
+        }
+      } else {
+        // Each topic partition writer owns its own files, WAL and offsets, so writers can make
+        // progress independently. Wait for all of them so that the task never returns from put()
+        // while a writer is still running.
+        List<Future<Void>> futures = new ArrayList<>(writers.size());
+        for (final TopicPartitionWriter writer : writers) {
+          futures.add(writeExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+              writer.write();
+              return null;
+            }
+          }));
+        }
+        awaitAll(futures);
+      }
+    } finally {
+      // The consumer may only be used by this thread
+      for (TopicPartitionWriter writer : topicPartitionWriters.values()) {
+        writer.updateContext();
+      }
+    }
+  }
+
+  /**
+   * Pause the topic partitions that use the most memory while the task is over its memory budget,
+   * and resume them once usage is back below three quarters of the budget and they have been
+   * paused for at least {@link #MIN_THROTTLE_MS}.
+   */
+  private void applyMemoryBudget() {
+    if (memoryBudget <= 0) {
+      return;
+    }
+    long usage = 0L;
+    final Map<TopicPartitionWriter, Long> usages = new HashMap<>();
     for (TopicPartition tp : assignment) {
-      topicPartitionWriters.get(tp).write();
+      TopicPartitionWriter topicPartitionWriter = topicPartitionWriters.get(tp);
+      long writerUsage = topicPartitionWriter.memoryUsage();
+      usages.put(topicPartitionWriter, writerUsage);
+      usage += writerUsage;
+    }
+
+    if (usage > memoryBudget) {
+      List<TopicPartitionWriter> writers = new ArrayList<>(usages.keySet());
+      Collections.sort(writers, new Comparator<TopicPartitionWriter>() {
+        @Override
+        public int compare(TopicPartitionWriter a, TopicPartitionWriter b) {
+          return Long.compare(usages.get(b), usages.get(a));
+        }
+      });
+      log.debug("Estimated memory usage {} exceeds the budget of {} bytes", usage, memoryBudget);
+      for (TopicPartitionWriter topicPartitionWriter : writers) {
+        if (usage <= memoryBudget) {
+          break;
+        }
+        if (!topicPartitionWriter.isThrottled()) {
+          topicPartitionWriter.throttle();
+        }
+        usage -= usages.get(topicPartitionWriter);
+      }
+    } else if (usage <= memoryBudget - memoryBudget / 4) {
+      long now = time.milliseconds();
+      for (TopicPartitionWriter topicPartitionWriter : usages.keySet()) {
+        if (topicPartitionWriter.isThrottled()
+            && now - topicPartitionWriter.throttledMs() >= MIN_THROTTLE_MS) {
+          topicPartitionWriter.unthrottle();
+        }
+      }
     }
   }
 
   public void recover(TopicPartition tp) {
-    topicPartitionWriters.get(tp).recover();
+    TopicPartitionWriter topicPartitionWriter = topicPartitionWriters.get(tp);
+    topicPartitionWriter.recover();
+    topicPartitionWriter.updateContext();
+  }
+
+  /**
+   * Recover the given topic partitions, in parallel if there are several and more than one
+   * recovery thread. A partition whose recovery fails stays paused and retries its recovery on a
+   * later write, without holding back the other partitions.
+   */
+  public void recover(Collection<TopicPartition> partitions) {
+    if (connectorConfig.getBoolean(HdfsSinkConnectorConfig.DIRECTORY_LISTING_CACHE_CONFIG)) {
+      // Other tasks may have committed files of the partitions since they were last listed
+      storage.committedFiles().clear();
+    }
+    if (recoveryExecutor == null || partitions.size() <= 1) {
+      for (TopicPartition tp : partitions) {
+        recover(tp);
+      }
+      return;
+    }
+    // Each partition has its own WAL and offsets, and the writers only share the storage and the
+    // shared WAL, which are safe to use concurrently. The pauses, resumes and offsets requested by
+    // the writers are applied to the consumer once they are done, on this thread.
+    List<Future<Void>> futures = new ArrayList<>(partitions.size());
+    for (TopicPartition tp : partitions) {
+      final TopicPartitionWriter topicPartitionWriter = topicPartitionWriters.get(tp);
+      futures.add(recoveryExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          topicPartitionWriter.recover();
+          return null;
+        }
+      }));
+    }
+    try {
+      awaitAll(futures);
+    } finally {
+      for (TopicPartition tp : partitions) {
+        topicPartitionWriters.get(tp).updateContext();
+      }
+    }
   }
 
   public void syncWithHive() throws ConnectException {
+    boolean listingCache = connectorConfig.getBoolean(
+        HdfsSinkConnectorConfig.DIRECTORY_LISTING_CACHE_CONFIG
+    );
     Set<String> topics = new HashSet<>();
     for (TopicPartition tp : assignment) {
       topics.add(tp.topic());
@@ -388,14 +573,19 @@ public class DataWriter {
     try {
       for (String topic : topics) {
         String topicDir = FileUtils.topicDirectory(url, topicsDir, topic);
-        CommittedFileFilter filter = new TopicCommittedFileFilter(topic);
-        FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
-            storage,
-            new Path(topicDir),
-            filter
-        );
-        if (fileStatusWithMaxOffset != null) {
-          final Path path = fileStatusWithMaxOffset.getPath();
+        final Path path;
+        if (listingCache) {
+          path = storage.committedFiles().fileWithMaxOffset(topic);
+        } else {
+          CommittedFileFilter filter = new TopicCommittedFileFilter(topic);
+          FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
+              storage,
+              new Path(topicDir),
+              filter
+          );
+          path = fileStatusWithMaxOffset != null ? fileStatusWithMaxOffset.getPath() : null;
+        }
+        if (path != null) {
           final Schema latestSchema;
           latestSchema = schemaFileReader.getSchema(
               connectorConfig,
@@ -403,9 +593,16 @@ public class DataWriter {
           );
           hive.createTable(hiveDatabase, topic, latestSchema, partitioner);
           List<String> partitions = hiveMetaStore.listPartitions(hiveDatabase, topic, (short) -1);
-          FileStatus[] statuses = FileUtils.getDirectories(storage, new Path(topicDir));
-          for (FileStatus status : statuses) {
-            String location = status.getPath().toString();
+          List<Path> directories = new ArrayList<>();
+          if (listingCache) {
+            directories.addAll(storage.committedFiles().getDirectories(topic));
+          } else {
+            for (FileStatus status : FileUtils.getDirectories(storage, new Path(topicDir))) {
+              directories.add(status.getPath());
+            }
+          }
+          for (Path directory : directories) {
+            String location = directory.toString();
             if (!partitions.contains(location)) {
               String partitionValue = getPartitionValue(location);
               hiveMetaStore.addPartition(hiveDatabase, topic, partitionValue);
@@ -421,27 +618,13 @@ public class DataWriter {
   public void open(Collection<TopicPartition> partitions) {
     assignment = new HashSet<>(partitions);
     for (TopicPartition tp : assignment) {
-      TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
-          tp,
-          storage,
-          writerProvider,
-          newWriterProvider,
-          partitioner,
-          connectorConfig,
-          context,
-          avroData,
-          hiveMetaStore,
-          hive,
-          schemaFileReader,
-          executorService,
-          hiveUpdateFutures,
-          time
-      );
-      topicPartitionWriters.put(tp, topicPartitionWriter);
-      // We need to immediately start recovery to ensure we pause consumption of messages for the
-      // assigned topics while we try to recover offsets and rewind.
-      recover(tp);
+      topicPartitionWriters.put(tp, newTopicPartitionWriter(tp));
     }
+    // We need to immediately start recovery to ensure we pause consumption of messages for the
+    // assigned topics while we try to recover offsets and rewind. All the writers are created
+    // first, so that a shared WAL is read once for all of them.
+    recover(assignment);
+    updateDispatch();
   }
 
   public void close() {
@@ -462,6 +645,25 @@ public class DataWriter {
         topicPartitionWriters.remove(tp);
       }
     }
+    updateDispatch();
+  }
+
+  private void updateDispatch() {
+    Map<String, TopicPartitionWriter[]> dispatch = new HashMap<>();
+    for (Map.Entry<TopicPartition, TopicPartitionWriter> entry : topicPartitionWriters.entrySet()) {
+      TopicPartition tp = entry.getKey();
+      TopicPartitionWriter[] writers = dispatch.get(tp.topic());
+      if (writers == null || writers.length <= tp.partition()) {
+        TopicPartitionWriter[] grown = new TopicPartitionWriter[tp.partition() + 1];
+        if (writers != null) {
+          System.arraycopy(writers, 0, grown, 0, writers.length);
+        }
+        writers = grown;
+        dispatch.put(tp.topic(), writers);
+      }
+      writers[tp.partition()] = entry.getValue();
+    }
+    writersByTopic = dispatch;
   }
 
   public void stop() {
@@ -488,6 +690,23 @@ public class DataWriter {
       }
     }
 
+    if (writeExecutor != null) {
+      log.info("Shutting down write executor service.");
+      writeExecutor.shutdown();
+    }
+
+    if (recoveryExecutor != null) {
+      log.info("Shutting down recovery executor service.");
+      recoveryExecutor.shutdown();
+    }
+
+    if (commitExecutor != null) {
+      // Writers wait for their pending commits when closed, so nothing is left running here
+      log.info("Shutting down commit executor service.");
+      commitExecutor.shutdown();
+    }
+
+    metrics.close();
     storage.close();
 
     if (ticketRenewThread != null) {
@@ -526,6 +745,62 @@ public class DataWriter {
     return topicPartitionWriter.getTempFiles();
   }
 
+  private TopicPartitionWriter newTopicPartitionWriter(TopicPartition tp) {
+    return new TopicPartitionWriter(
+        tp,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        hiveMetaStore,
+        hive,
+        schemaFileReader,
+        executorService,
+        hiveUpdateFutures,
+        commitExecutor,
+        openWriters,
+        metrics.forPartition(tp),
+        time
+    );
+  }
+
+  /**
+   * Wait for all the given tasks to finish, even if the calling thread is interrupted, and rethrow
+   * the first failure.
+   */
+  private void awaitAll(List<Future<Void>> futures) {
+    RuntimeException failure = null;
+    boolean interrupted = false;
+    for (Future<Void> future : futures) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          // The task must not go on while a writer may still touch its partition state
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            Throwable cause = e.getCause();
+            failure = cause instanceof RuntimeException
+                      ? (RuntimeException) cause
+                      : new ConnectException(cause);
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   private void createDir(String dir) {
     String path = url + "/" + dir;
     if (!storage.exists(path)) {
@@ -558,6 +833,13 @@ public class DataWriter {
 
   public static class PartitionerWrapper implements Partitioner {
     public final io.confluent.connect.storage.partitioner.Partitioner<FieldSchema>  partitioner;
+    // Only set for the time based partitioners whose encoded partition depends on nothing but the
+    // time bucket of the record, in which case the encoding is cached per topic for the current
+    // bucket instead of formatting the timestamp of every record
+    private TimestampExtractor timestampExtractor;
+    private long partitionDurationMs;
+    private DateTimeZone timeZone;
+    private final ConcurrentMap<String, TimeBucket> buckets = new ConcurrentHashMap<>();
 
     public PartitionerWrapper(
         io.confluent.connect.storage.partitioner.Partitioner<FieldSchema> partitioner
@@ -568,22 +850,86 @@ public class DataWriter {
     @Override
     public void configure(Map<String, Object> config) {
       partitioner.configure(config);
+      Class<?> partitionerClass = partitioner.getClass();
+      if (partitionerClass == TimeBasedPartitioner.class
+          || partitionerClass == HourlyPartitioner.class
+          || partitionerClass == DailyPartitioner.class) {
+        TimeBasedPartitioner<?> timeBasedPartitioner = (TimeBasedPartitioner<?>) partitioner;
+        timestampExtractor = timeBasedPartitioner.getTimestampExtractor();
+        partitionDurationMs = timeBasedPartitioner.getPartitionDurationMs();
+        timeZone = DateTimeZone.forID((String) config.get(PartitionerConfig.TIMEZONE_CONFIG));
+      }
     }
 
     @Override
     public String encodePartition(SinkRecord sinkRecord) {
-      return partitioner.encodePartition(sinkRecord);
+      if (timestampExtractor == null) {
+        return partitioner.encodePartition(sinkRecord);
+      }
+      Long timestamp = timestampExtractor.extract(sinkRecord);
+      if (timestamp == null) {
+        // Let the partitioner report the missing timestamp
+        return partitioner.encodePartition(sinkRecord);
+      }
+
+      String topic = sinkRecord.topic();
+      TimeBucket bucket = buckets.get(topic);
+      if (bucket != null && inBucket(bucket, timestamp)) {
+        return bucket.encodedPartition;
+      }
+
+      long start = TimeBasedPartitioner.getPartition(partitionDurationMs, timestamp, timeZone);
+      String encodedPartition = partitioner.encodePartition(sinkRecord);
+      // The partitioner extracts the timestamp again, which for wallclock based extractors may
+      // have moved on to the next bucket in the meantime
+      Long after = timestampExtractor.extract(sinkRecord);
+      if (after != null
+          && TimeBasedPartitioner.getPartition(partitionDurationMs, after, timeZone) == start) {
+        buckets.put(topic, new TimeBucket(
+            start,
+            encodedPartition,
+            partitioner.generatePartitionedPath(topic, encodedPartition)
+        ));
+      }
+      return encodedPartition;
     }
 
     @Override
     public String generatePartitionedPath(String topic, String encodedPartition) {
+      if (timestampExtractor != null) {
+        TimeBucket bucket = buckets.get(topic);
+        if (bucket != null && bucket.encodedPartition.equals(encodedPartition)) {
+          return bucket.path;
+        }
+      }
       return partitioner.generatePartitionedPath(topic, encodedPartition);
     }
 
+    private boolean inBucket(TimeBucket bucket, long timestamp) {
+      if (timeZone.isFixed()) {
+        return timestamp >= bucket.start && timestamp - bucket.start < partitionDurationMs;
+      }
+      // Buckets are aligned to the local time, so their length varies with daylight saving time
+      return TimeBasedPartitioner.getPartition(partitionDurationMs, timestamp, timeZone)
+          == bucket.start;
+    }
+
     @Override
     public List<FieldSchema> partitionFields() {
       return partitioner.partitionFields();
     }
+
+    private static class TimeBucket {
+      private final long start;
+      private final String encodedPartition;
+      private final String path;
+
+      TimeBucket(long start, String encodedPartition, String path) {
+        this.start = start;
+        this.encodedPartition = encodedPartition;
+        this.path = path;
+      }
+    }
   }
 
   private String getPartitionValue(String path) {
@@ -16,19 +16,23 @@ package io.confluent.connect.hdfs;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.regex.Matcher;
 
 import io.confluent.connect.hdfs.filter.CommittedFileFilter;
+import io.confluent.connect.hdfs.storage.DirectoryTraversal;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.hdfs.storage.Storage;
 
 public class FileUtils {
@@ -106,117 +110,115 @@ public class FileUtils {
   public static FileStatus fileStatusWithMaxOffset(
       Storage storage,
       Path path,
-      CommittedFileFilter filter
+      final CommittedFileFilter filter
   ) {
-    if (!storage.exists(path.toString())) {
-      return null;
-    }
-    long maxOffset = -1L;
-    FileStatus fileStatusWithMaxOffset = null;
-    List<FileStatus> statuses = storage.list(path.toString());
-    for (FileStatus status : statuses) {
-      if (status.isDirectory()) {
-        FileStatus fileStatus = fileStatusWithMaxOffset(storage, status.getPath(), filter);
-        if (fileStatus != null) {
-          long offset = extractOffset(fileStatus.getPath().getName());
-          if (offset > maxOffset) {
-            maxOffset = offset;
-            fileStatusWithMaxOffset = fileStatus;
-          }
+    return traversal(storage).traverse(path, new DirectoryTraversal.Collector<FileStatus>() {
+      @Override
+      public FileStatus empty() {
+        return null;
+      }
+
+      @Override
+      public FileStatus file(FileStatus result, FileStatus file) {
+        log.trace("Checked for max offset: {}", file.getPath());
+        return filter.accept(file.getPath()) ? merge(result, file) : result;
+      }
+
+      @Override
+      public FileStatus leaf(FileStatus result, FileStatus directory) {
+        return result;
+      }
+
+      @Override
+      public FileStatus merge(FileStatus result, FileStatus child) {
+        if (child == null) {
+          return result;
         }
-      } else {
-        String filename = status.getPath().getName();
-        log.trace("Checked for max offset: {}", status.getPath());
-        if (filter.accept(status.getPath())) {
-          long offset = extractOffset(filename);
-          if (offset > maxOffset) {
-            maxOffset = offset;
-            fileStatusWithMaxOffset = status;
-          }
+        if (result == null
+            || extractOffset(child.getPath().getName())
+                > extractOffset(result.getPath().getName())) {
+          return child;
         }
+        return result;
       }
-    }
-    return fileStatusWithMaxOffset;
+    });
   }
 
   public static long extractOffset(String filename) {
-    Matcher m = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(filename);
-    // NB: if statement has side effect of enabling group() call
-    if (!m.matches()) {
-      throw new IllegalArgumentException(filename + " does not match COMMITTED_FILENAME_PATTERN");
-    }
-    return Long.parseLong(m.group(HdfsSinkConnectorConstants.PATTERN_END_OFFSET_GROUP));
+    return CommittedFileName.endOffset(filename);
   }
 
-  private static ArrayList<FileStatus> getDirectoriesImpl(Storage storage, Path path) {
-    List<FileStatus> statuses = storage.list(path.toString());
-    ArrayList<FileStatus> result = new ArrayList<>();
-    for (FileStatus status : statuses) {
-      if (status.isDirectory()) {
-        int count = 0;
-        List<FileStatus> fileStatuses = storage.list(status.getPath().toString());
-        for (FileStatus fileStatus : fileStatuses) {
-          if (fileStatus.isDirectory()) {
-            result.addAll(getDirectoriesImpl(storage, fileStatus.getPath()));
-          } else {
-            count++;
-          }
-        }
-        if (count == fileStatuses.size()) {
-          result.add(status);
-        }
+  public static FileStatus[] getDirectories(Storage storage, Path path) throws IOException {
+    List<FileStatus> result = traversal(storage).traverse(path, new ListCollector() {
+      @Override
+      public List<FileStatus> leaf(List<FileStatus> result, FileStatus directory) {
+        result.add(directory);
+        return result;
       }
-    }
-    return result;
+    });
+    return result.toArray(new FileStatus[result.size()]);
   }
 
-  public static FileStatus[] getDirectories(Storage storage, Path path) throws IOException {
-    ArrayList<FileStatus> result = getDirectoriesImpl(storage, path);
+  public static FileStatus[] traverse(Storage storage, Path path, final PathFilter filter)
+      throws IOException {
+    List<FileStatus> result = traversal(storage).traverse(path, new ListCollector() {
+      @Override
+      public List<FileStatus> file(List<FileStatus> result, FileStatus file) {
+        if (filter.accept(file.getPath())) {
+          result.add(file);
+        }
+        return result;
+      }
+    });
     return result.toArray(new FileStatus[result.size()]);
   }
 
-  private static ArrayList<FileStatus> traverseImpl(Storage storage, Path path, PathFilter filter) {
-    if (!storage.exists(path.toString())) {
-      return new ArrayList<>();
-    }
+  public static FileStatus[] traverse(FileSystem fs, Path path) throws IOException {
     ArrayList<FileStatus> result = new ArrayList<>();
-    List<FileStatus> statuses = storage.list(path.toString());
-    for (FileStatus status : statuses) {
-      if (status.isDirectory()) {
-        result.addAll(traverseImpl(storage, status.getPath(), filter));
-      } else {
-        if (filter.accept(status.getPath())) {
-          result.add(status);
-        }
+    try {
+      RemoteIterator<LocatedFileStatus> statuses = fs.listFiles(path, true);
+      while (statuses.hasNext()) {
+        result.add(statuses.next());
       }
+    } catch (FileNotFoundException e) {
+      log.trace("{} does not exist", path);
+    }
+    return result.toArray(new FileStatus[result.size()]);
+  }
+
+  private static DirectoryTraversal traversal(Storage storage) {
+    if (storage instanceof HdfsStorage) {
+      return ((HdfsStorage) storage).traversal();
     }
-    return result;
+    return new DirectoryTraversal(storage, 1);
   }
 
-  private static ArrayList<FileStatus> traverseImpl(FileSystem fs, Path path) throws IOException {
-    if (!fs.exists(path)) {
+  /**
+   * Concatenates the files and directories that its subclasses add, in traversal order.
+   */
+  private static class ListCollector implements DirectoryTraversal.Collector<List<FileStatus>> {
+    @Override
+    public List<FileStatus> empty() {
       return new ArrayList<>();
     }
-    ArrayList<FileStatus> result = new ArrayList<>();
-    FileStatus[] statuses = fs.listStatus(path);
-    for (FileStatus status : statuses) {
-      if (status.isDirectory()) {
-        result.addAll(traverseImpl(fs, status.getPath()));
-      } else {
-        result.add(status);
-      }
+
+    @Override
+    public List<FileStatus> file(List<FileStatus> result, FileStatus file) {
+      return result;
     }
-    return result;
-  }
 
-  public static FileStatus[] traverse(Storage storage, Path path, PathFilter filter)
-      throws IOException {
-    ArrayList<FileStatus> result = traverseImpl(storage, path, filter);
-    return result.toArray(new FileStatus[result.size()]);
-  }
+    @Override
+    public List<FileStatus> leaf(List<FileStatus> result, FileStatus directory) {
+      return result;
+    }
 
-  public static FileStatus[] traverse(FileSystem fs, Path path) throws IOException {
-    ArrayList<FileStatus> result = traverseImpl(fs, path);
-    return result.toArray(new FileStatus[result.size()]);
+    @Override
+    public List<FileStatus> merge(List<FileStatus> result, List<FileStatus> child) {
+      if (result.isEmpty()) {
+        return child;
+      }
+      result.addAll(child);
+      return result;
+    }
   }
 }
@@ -60,9 +60,10 @@ public class HdfsSinkConnector extends SinkConnector {
   @Override
   public List<Map<String, String>> taskConfigs(int maxTasks) {
     List<Map<String, String>> taskConfigs = new ArrayList<>();
-    Map<String, String> taskProps = new HashMap<>();
-    taskProps.putAll(configProperties);
     for (int i = 0; i < maxTasks; i++) {
+      Map<String, String> taskProps = new HashMap<>();
+      taskProps.putAll(configProperties);
+      taskProps.put(HdfsSinkConnectorConfig.TASK_ID_CONFIG, String.valueOf(i));
       taskConfigs.add(taskProps);
     }
     return taskConfigs;
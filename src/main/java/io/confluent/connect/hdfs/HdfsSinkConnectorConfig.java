@@ -54,6 +54,9 @@ import static io.confluent.connect.storage.common.StorageCommonConfig.STORAGE_CL
 
 public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
 
+  // Set by the connector in the configuration of each of its tasks
+  public static final String TASK_ID_CONFIG = "hdfs.task.id";
+
   // HDFS Group
   // This config is deprecated and will be removed in future releases. Use store.url instead.
   public static final String HDFS_URL_CONFIG = "hdfs.url";
@@ -113,6 +116,167 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
   private static final String KERBEROS_TICKET_RENEW_PERIOD_MS_DISPLAY = "Kerberos Ticket Renew "
       + "Period (ms)";
 
+  // Performance group
+  public static final String WRITE_THREADS_CONFIG = "write.threads";
+  public static final int WRITE_THREADS_DEFAULT = 1;
+  private static final String WRITE_THREADS_DOC =
+      "The number of threads used by each task to write the buffered records of its assigned "
+          + "topic partitions. With the default of 1, partitions are written one after another on "
+          + "the task thread.";
+  private static final String WRITE_THREADS_DISPLAY = "Write Threads";
+
+  public static final String RECOVERY_THREADS_CONFIG = "recovery.threads";
+  public static final int RECOVERY_THREADS_DEFAULT = 1;
+  private static final String RECOVERY_THREADS_DOC =
+      "The number of threads used by each task to recover its newly assigned topic partitions, "
+          + "which acquires the lease on, applies and truncates the WAL of each partition and "
+          + "restores its offset. With the default of 1, partitions are recovered one after "
+          + "another on the task thread.";
+  private static final String RECOVERY_THREADS_DISPLAY = "Recovery Threads";
+
+  public static final String DIRECTORY_LISTING_THREADS_CONFIG = "directory.listing.threads";
+  public static final int DIRECTORY_LISTING_THREADS_DEFAULT = 1;
+  private static final String DIRECTORY_LISTING_THREADS_DOC =
+      "The maximum number of directory listings each task keeps in flight while walking the "
+          + "committed files, e.g. to restore offsets and to sync Hive partitions. Sibling "
+          + "directories are listed in parallel on a shared pool of this many threads. With the "
+          + "default of 1, directories are listed one after another on the calling thread.";
+  private static final String DIRECTORY_LISTING_THREADS_DISPLAY = "Directory Listing Threads";
+
+  public static final String DIRECTORY_LISTING_CACHE_CONFIG = "directory.listing.cache";
+  public static final boolean DIRECTORY_LISTING_CACHE_DEFAULT = false;
+  private static final String DIRECTORY_LISTING_CACHE_DOC =
+      "Whether each task lists the directory of a topic once when it recovers its partitions and "
+          + "shares the listing between the partitions of the topic and the Hive sync, instead of "
+          + "listing the directory once per partition. The files the task commits are added to "
+          + "the listing, which is discarded on the next recovery. Offsets manifests, when "
+          + "enabled, are still read first.";
+  private static final String DIRECTORY_LISTING_CACHE_DISPLAY = "Directory Listing Cache";
+
+  public static final String ASYNC_COMMIT_CONFIG = "async.commit";
+  public static final boolean ASYNC_COMMIT_DEFAULT = false;
+  private static final String ASYNC_COMMIT_DOC =
+      "Whether files are committed in the background after a rotation. When enabled, the WAL "
+          + "append and the rename of the closed files of a topic partition overlap with writing "
+          + "the next files of that partition. Offsets are only advanced once the commit has "
+          + "completed, and at most one commit per topic partition is in flight. A failed "
+          + "commit is retried after ``retry.backoff.ms``.";
+  private static final String ASYNC_COMMIT_DISPLAY = "Asynchronous Commit";
+
+  public static final String COMMIT_THREADS_CONFIG = "commit.threads";
+  public static final int COMMIT_THREADS_DEFAULT = 4;
+  private static final String COMMIT_THREADS_DOC =
+      "The number of threads used by each task to commit files in the background when "
+          + "``async.commit`` is enabled. Commits of different topic partitions run in parallel "
+          + "up to this many, independently of ``write.threads``.";
+  private static final String COMMIT_THREADS_DISPLAY = "Commit Threads";
+
+  public static final String FLUSH_SIZE_BYTES_CONFIG = "flush.size.bytes";
+  public static final long FLUSH_SIZE_BYTES_DEFAULT = 0L;
+  private static final String FLUSH_SIZE_BYTES_DOC =
+      "The size in bytes a file may reach before it is committed, in addition to ``flush.size`` "
+          + "and the time based rotation settings. Setting it close to the HDFS block size avoids "
+          + "many small files when record sizes vary. The size is reported by the writer of the "
+          + "format and may be an estimate for data that is still buffered. The default of 0 "
+          + "disables size based rotation.";
+  private static final String FLUSH_SIZE_BYTES_DISPLAY = "Flush Size (bytes)";
+
+  public static final String MAX_OPEN_WRITERS_CONFIG = "max.open.writers";
+  public static final int MAX_OPEN_WRITERS_DEFAULT = 0;
+  private static final String MAX_OPEN_WRITERS_DOC =
+      "The maximum number of files a task keeps open for writing, which bounds the memory and "
+          + "file handles used with partitioners that produce many partitions. Opening a file "
+          + "beyond the limit closes the least recently written file of the task. A closed file "
+          + "is committed with the other files of its topic partition on their next rotation, "
+          + "which happens at the latest when another record is written to its partition. The "
+          + "default of 0 means no limit.";
+  private static final String MAX_OPEN_WRITERS_DISPLAY = "Max Open Writers";
+
+  public static final String MEMORY_BUDGET_BYTES_CONFIG = "memory.budget.bytes";
+  public static final long MEMORY_BUDGET_BYTES_DEFAULT = 0L;
+  private static final String MEMORY_BUDGET_BYTES_DOC =
+      "The estimated memory in bytes a task may use for buffered records and for data buffered "
+          + "by its open files. When exceeded, the topic partitions using the most memory are "
+          + "paused for at least a second and until usage falls back to three quarters of the "
+          + "budget. The open files of a paused topic partition are committed once its buffered "
+          + "records are written. The default of 0 disables memory accounting.";
+  private static final String MEMORY_BUDGET_BYTES_DISPLAY = "Memory Budget (bytes)";
+
+  public static final String WAL_TAIL_RECOVERY_CONFIG = "wal.tail.recovery";
+  public static final boolean WAL_TAIL_RECOVERY_DEFAULT = false;
+  private static final String WAL_TAIL_RECOVERY_DOC =
+      "Whether recovery only applies the last complete transaction of the WAL, found by reading "
+          + "back from the end of the log, instead of replaying the whole log. The files of every "
+          + "earlier transaction are committed before the next transaction is appended, so both "
+          + "recover the same files. Disabled by default, so that logs written by connectors that "
+          + "did not commit each transaction before appending the next are fully replayed.";
+  private static final String WAL_TAIL_RECOVERY_DISPLAY = "WAL Tail Recovery";
+
+  public static final String WAL_SHARED_CONFIG = "wal.shared";
+  public static final boolean WAL_SHARED_DEFAULT = false;
+  private static final String WAL_SHARED_DOC =
+      "Whether the topic partitions of a task share a single WAL, under the ``+shared`` "
+          + "directory of ``logs.dir``, instead of each holding a lease on a WAL of its own. "
+          + "Recovering a topic partition claims its next epoch, under the ``+epoch`` directory "
+          + "of its WAL directory, and transactions appended by a task the topic partition was "
+          + "taken from are not recovered again. The WALs of topic partitions written before "
+          + "enabling it are still recovered, but shared WALs are not recovered once it is "
+          + "disabled again.";
+  private static final String WAL_SHARED_DISPLAY = "Shared WAL";
+
+  public static final String WAL_COMPACT_CONFIG = "wal.compact";
+  public static final boolean WAL_COMPACT_DEFAULT = false;
+  private static final String WAL_COMPACT_DOC =
+      "Whether new WAL files are written in the compact format, which stores the URL and topics "
+          + "directory shared by the file names once per WAL file instead of once per entry. "
+          + "Existing WAL files keep their format. Earlier versions of the connector cannot read "
+          + "WAL files in the compact format.";
+  private static final String WAL_COMPACT_DISPLAY = "Compact WAL";
+
+  public static final String OFFSETS_MANIFEST_CONFIG = "offsets.manifest";
+  public static final boolean OFFSETS_MANIFEST_DEFAULT = false;
+  private static final String OFFSETS_MANIFEST_DOC =
+      "Whether each topic partition keeps a manifest of its committed file with the highest "
+          + "offset in ``logs.dir``, committed with the files through the WAL, so that recovery "
+          + "reads its offset from the manifest instead of listing the whole topic directory. "
+          + "Recovery falls back to listing the directory when the manifest is missing or "
+          + "invalid. While it is disabled, recovery deletes the manifests, which would not "
+          + "record the files committed meanwhile.";
+  private static final String OFFSETS_MANIFEST_DISPLAY = "Offsets Manifest";
+
+  public static final String OFFSETS_TIME_PRUNING_CONFIG = "offsets.time.pruning";
+  public static final boolean OFFSETS_TIME_PRUNING_DEFAULT = false;
+  private static final String OFFSETS_TIME_PRUNING_DOC =
+      "Whether recovery lists the time directories of a time-based partitioner newest first, "
+          + "in the order of ``path.format``, and stops at the first one holding committed files "
+          + "of the topic partition instead of listing the whole topic directory. This only "
+          + "applies with the wallclock timestamp extractor, which never writes a later offset "
+          + "to an older directory. Otherwise, and for directories that do not match "
+          + "``path.format``, the whole directory is listed.";
+  private static final String OFFSETS_TIME_PRUNING_DISPLAY = "Time Pruned Offsets";
+
+  public static final String WAL_BACKEND_CONFIG = "wal.backend";
+  public static final String WAL_BACKEND_HDFS = "hdfs";
+  public static final String WAL_BACKEND_LOCAL = "local";
+  public static final String WAL_BACKEND_DEFAULT = WAL_BACKEND_HDFS;
+  private static final String WAL_BACKEND_DOC =
+      "Where the WAL of each topic partition is kept. ``hdfs`` writes it to ``logs.dir`` and "
+          + "syncs the HDFS pipeline on every commit. ``local`` keeps it in a memory-mapped, "
+          + "checksummed file in ``wal.local.dir`` on the worker, and also appends every "
+          + "commit to ``logs.dir``, flushing the HDFS pipeline without syncing it, so that "
+          + "another worker can recover it. The HDFS log therefore stays on the commit path, "
+          + "``local`` only trades its sync for a flush, and recovery still replays it. With "
+          + "``local``, ``wal.shared`` is ignored.";
+  private static final String WAL_BACKEND_DISPLAY = "WAL Backend";
+
+  public static final String WAL_LOCAL_DIR_CONFIG = "wal.local.dir";
+  public static final String WAL_LOCAL_DIR_DEFAULT = null;
+  private static final String WAL_LOCAL_DIR_DOC =
+      "The directory of the worker that holds the WALs when ``wal.backend`` is ``local``, "
+          + "which requires it. It should be on a persistent disk, since its content is needed "
+          + "to recover after a restart.";
+  private static final String WAL_LOCAL_DIR_DISPLAY = "Local WAL Directory";
+
   private static final ConfigDef.Recommender hdfsAuthenticationKerberosDependentsRecommender =
       new BooleanParentRecommender(
           HDFS_AUTHENTICATION_KERBEROS_CONFIG);
@@ -275,6 +439,211 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
           hdfsAuthenticationKerberosDependentsRecommender
       );
     }
+
+    {
+      final String group = "Performance";
+      int orderInGroup = 0;
+      // Define Performance configuration group
+      configDef.define(
+          WRITE_THREADS_CONFIG,
+          Type.INT,
+          WRITE_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          WRITE_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WRITE_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          RECOVERY_THREADS_CONFIG,
+          Type.INT,
+          RECOVERY_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          RECOVERY_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          RECOVERY_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          DIRECTORY_LISTING_THREADS_CONFIG,
+          Type.INT,
+          DIRECTORY_LISTING_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          DIRECTORY_LISTING_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          DIRECTORY_LISTING_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          DIRECTORY_LISTING_CACHE_CONFIG,
+          Type.BOOLEAN,
+          DIRECTORY_LISTING_CACHE_DEFAULT,
+          Importance.LOW,
+          DIRECTORY_LISTING_CACHE_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          DIRECTORY_LISTING_CACHE_DISPLAY
+      );
+
+      configDef.define(
+          ASYNC_COMMIT_CONFIG,
+          Type.BOOLEAN,
+          ASYNC_COMMIT_DEFAULT,
+          Importance.LOW,
+          ASYNC_COMMIT_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          ASYNC_COMMIT_DISPLAY
+      );
+
+      configDef.define(
+          COMMIT_THREADS_CONFIG,
+          Type.INT,
+          COMMIT_THREADS_DEFAULT,
+          ConfigDef.Range.atLeast(1),
+          Importance.LOW,
+          COMMIT_THREADS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          COMMIT_THREADS_DISPLAY
+      );
+
+      configDef.define(
+          FLUSH_SIZE_BYTES_CONFIG,
+          Type.LONG,
+          FLUSH_SIZE_BYTES_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.MEDIUM,
+          FLUSH_SIZE_BYTES_DOC,
+          group,
+          ++orderInGroup,
+          Width.LONG,
+          FLUSH_SIZE_BYTES_DISPLAY
+      );
+
+      configDef.define(
+          MAX_OPEN_WRITERS_CONFIG,
+          Type.INT,
+          MAX_OPEN_WRITERS_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          MAX_OPEN_WRITERS_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          MAX_OPEN_WRITERS_DISPLAY
+      );
+
+      configDef.define(
+          MEMORY_BUDGET_BYTES_CONFIG,
+          Type.LONG,
+          MEMORY_BUDGET_BYTES_DEFAULT,
+          ConfigDef.Range.atLeast(0),
+          Importance.LOW,
+          MEMORY_BUDGET_BYTES_DOC,
+          group,
+          ++orderInGroup,
+          Width.LONG,
+          MEMORY_BUDGET_BYTES_DISPLAY
+      );
+
+      configDef.define(
+          WAL_TAIL_RECOVERY_CONFIG,
+          Type.BOOLEAN,
+          WAL_TAIL_RECOVERY_DEFAULT,
+          Importance.LOW,
+          WAL_TAIL_RECOVERY_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_TAIL_RECOVERY_DISPLAY
+      );
+
+      configDef.define(
+          WAL_SHARED_CONFIG,
+          Type.BOOLEAN,
+          WAL_SHARED_DEFAULT,
+          Importance.LOW,
+          WAL_SHARED_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_SHARED_DISPLAY
+      );
+
+      configDef.define(
+          WAL_COMPACT_CONFIG,
+          Type.BOOLEAN,
+          WAL_COMPACT_DEFAULT,
+          Importance.LOW,
+          WAL_COMPACT_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_COMPACT_DISPLAY
+      );
+
+      configDef.define(
+          OFFSETS_MANIFEST_CONFIG,
+          Type.BOOLEAN,
+          OFFSETS_MANIFEST_DEFAULT,
+          Importance.LOW,
+          OFFSETS_MANIFEST_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          OFFSETS_MANIFEST_DISPLAY
+      );
+
+      configDef.define(
+          OFFSETS_TIME_PRUNING_CONFIG,
+          Type.BOOLEAN,
+          OFFSETS_TIME_PRUNING_DEFAULT,
+          Importance.LOW,
+          OFFSETS_TIME_PRUNING_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          OFFSETS_TIME_PRUNING_DISPLAY
+      );
+
+      configDef.define(
+          WAL_BACKEND_CONFIG,
+          Type.STRING,
+          WAL_BACKEND_DEFAULT,
+          ConfigDef.ValidString.in(WAL_BACKEND_HDFS, WAL_BACKEND_LOCAL),
+          Importance.LOW,
+          WAL_BACKEND_DOC,
+          group,
+          ++orderInGroup,
+          Width.SHORT,
+          WAL_BACKEND_DISPLAY
+      );
+
+      configDef.define(
+          WAL_LOCAL_DIR_CONFIG,
+          Type.STRING,
+          WAL_LOCAL_DIR_DEFAULT,
+          Importance.LOW,
+          WAL_LOCAL_DIR_DOC,
+          group,
+          ++orderInGroup,
+          Width.LONG,
+          WAL_LOCAL_DIR_DISPLAY
+      );
+    }
     // Put the storage group(s) last ...
     ConfigDef storageConfigDef = StorageSinkConnectorConfig.newConfigDef(
         FORMAT_CLASS_RECOMMENDER,
@@ -287,6 +656,7 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
   }
 
   private final String name;
+  private final int taskId;
   private final StorageCommonConfig commonConfig;
   private final HiveConfig hiveConfig;
   private final PartitionerConfig partitionerConfig;
@@ -306,11 +676,13 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
     ConfigDef partitionerConfigDef = PartitionerConfig.newConfigDef(PARTITIONER_CLASS_RECOMMENDER);
     partitionerConfig = new PartitionerConfig(partitionerConfigDef, originalsStrings());
     this.name = parseName(originalsStrings());
+    this.taskId = parseTaskId(originalsStrings());
     this.hadoopConfig = new Configuration();
     addToGlobal(hiveConfig);
     addToGlobal(partitionerConfig);
     addToGlobal(commonConfig);
     addToGlobal(this);
+    validateWalLocalDir();
   }
 
   public static Map<String, String> addDefaults(Map<String, String> props) {
@@ -325,6 +697,23 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
     return nameProp != null ? nameProp : "HDFS-sink";
   }
 
+  protected static int parseTaskId(Map<String, String> props) {
+    String taskIdProp = props.get(TASK_ID_CONFIG);
+    return taskIdProp != null ? Integer.parseInt(taskIdProp) : 0;
+  }
+
+  private void validateWalLocalDir() {
+    String localDir = getString(WAL_LOCAL_DIR_CONFIG);
+    if (WAL_BACKEND_LOCAL.equals(getString(WAL_BACKEND_CONFIG))
+        && (localDir == null || localDir.isEmpty())) {
+      throw new ConfigException(
+          WAL_LOCAL_DIR_CONFIG,
+          localDir,
+          "Must be set when " + WAL_BACKEND_CONFIG + " is " + WAL_BACKEND_LOCAL
+      );
+    }
+  }
+
   private void addToGlobal(AbstractConfig config) {
     allConfigs.add(config);
     addConfig(config.values(), (ComposableConfig) config);
@@ -340,6 +729,10 @@ public class HdfsSinkConnectorConfig extends StorageSinkConnectorConfig {
     return name;
   }
 
+  public int getTaskId() {
+    return taskId;
+  }
+
   @Override
   public Object get(String key) {
     ComposableConfig config = propertyToConfig.get(key);
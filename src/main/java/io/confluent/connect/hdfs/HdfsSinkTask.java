@@ -148,9 +148,7 @@ public class HdfsSinkTask extends SinkTask {
   }
 
   private void recover(Set<TopicPartition> assignment) {
-    for (TopicPartition tp : assignment) {
-      hdfsWriter.recover(tp);
-    }
+    hdfsWriter.recover(assignment);
   }
 
   private void syncWithHive() throws ConnectException {
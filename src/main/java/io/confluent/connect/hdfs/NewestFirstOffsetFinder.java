@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.confluent.connect.hdfs.filter.CommittedFileFilter;
+import io.confluent.connect.hdfs.storage.Storage;
+
+/**
+ * Finds the committed file with the highest offset of a topic partition whose files are laid
+ * out by a time-based partitioner. Each level of the path format is listed newest first and the
+ * search stops at the first leaf directory holding committed files of the topic partition, so
+ * recovery only lists the most recent directories instead of the whole retention.
+ *
+ * <p>This is only correct if a later offset is never written to an older directory, which holds
+ * for the wallclock timestamp extractor. A directory with entries that do not match its level of
+ * the path format is listed as a whole.
+ */
+public class NewestFirstOffsetFinder {
+  private static final Logger log = LoggerFactory.getLogger(NewestFirstOffsetFinder.class);
+
+  private final Storage storage;
+  private final List<DateTimeFormatter> levels;
+
+  public NewestFirstOffsetFinder(Storage storage, String pathFormat, Locale locale) {
+    this.storage = storage;
+    this.levels = new ArrayList<>();
+    for (String level : pathFormat.split("/")) {
+      if (!level.isEmpty()) {
+        levels.add(DateTimeFormat.forPattern(level).withLocale(locale).withZoneUTC());
+      }
+    }
+  }
+
+  public FileStatus fileStatusWithMaxOffset(Path topicDir, CommittedFileFilter filter) {
+    if (!storage.exists(topicDir.toString())) {
+      return null;
+    }
+    return fileStatusWithMaxOffset(topicDir, 0, filter);
+  }
+
+  private FileStatus fileStatusWithMaxOffset(Path dir, int level, CommittedFileFilter filter) {
+    if (level == levels.size()) {
+      return FileUtils.fileStatusWithMaxOffset(storage, dir, filter);
+    }
+
+    // Directories of the same level are ordered by the time they stand for, which for patterns
+    // such as month names is not their lexicographic order
+    TreeMap<Long, List<Path>> directories = new TreeMap<>();
+    for (FileStatus status : storage.list(dir.toString())) {
+      Long time = status.isDirectory() ? parse(level, status.getPath().getName()) : null;
+      if (time == null) {
+        log.debug("{} does not match the path format, listing {}", status.getPath(), dir);
+        return FileUtils.fileStatusWithMaxOffset(storage, dir, filter);
+      }
+      if (!directories.containsKey(time)) {
+        directories.put(time, new ArrayList<Path>());
+      }
+      directories.get(time).add(status.getPath());
+    }
+
+    for (Map.Entry<Long, List<Path>> entry : directories.descendingMap().entrySet()) {
+      FileStatus fileStatusWithMaxOffset = null;
+      for (Path path : entry.getValue()) {
+        FileStatus fileStatus = fileStatusWithMaxOffset(path, level + 1, filter);
+        if (fileStatus != null
+            && (fileStatusWithMaxOffset == null
+                || FileUtils.extractOffset(fileStatus.getPath().getName())
+                    > FileUtils.extractOffset(fileStatusWithMaxOffset.getPath().getName()))) {
+          fileStatusWithMaxOffset = fileStatus;
+        }
+      }
+      if (fileStatusWithMaxOffset != null) {
+        return fileStatusWithMaxOffset;
+      }
+    }
+    return null;
+  }
+
+  private Long parse(int level, String name) {
+    try {
+      return levels.get(level).parseMillis(name);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import org.apache.avro.file.SeekableInput;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+/**
+ * The manifest of the files committed for a topic partition, recording its committed file with
+ * the highest end offset so that recovery does not have to list the whole topic directory.
+ *
+ * <p>Each manifest is named after its end offset and kept next to the WAL of the topic partition.
+ * It is written as a temp file and renamed as part of the same WAL transaction as the files it
+ * describes, so it is never behind them once the WAL is applied. The manifest of the previous
+ * transaction is deleted once the next one is committed. While manifests are disabled, recovery
+ * deletes them with {@link #deleteAll}, since they would miss the files committed meanwhile.
+ */
+public class OffsetManifest {
+  private static final Logger log = LoggerFactory.getLogger(OffsetManifest.class);
+  private static final String PREFIX = "manifest.";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final HdfsStorage storage;
+  private final String dir;
+  private long committedOffset = -1L;
+
+  public OffsetManifest(HdfsStorage storage, String logsDir, TopicPartition tp) {
+    this.storage = storage;
+    dir = FileUtils.directoryName(storage.url(), logsDir, tp);
+  }
+
+  /**
+   * Write the manifest of the committed files of a transaction, and add it to the transaction.
+   *
+   * @param transaction the committed file names by temp file name
+   * @return the end offset of the manifest, or -1 if the transaction has no files
+   */
+  public long addTo(Map<String, String> transaction) {
+    String newestFile = null;
+    long endOffset = -1L;
+    for (String committedFile : transaction.values()) {
+      long fileEndOffset = FileUtils.extractOffset(new Path(committedFile).getName());
+      if (fileEndOffset > endOffset) {
+        endOffset = fileEndOffset;
+        newestFile = committedFile;
+      }
+    }
+    if (newestFile == null) {
+      return -1L;
+    }
+    String tempFile = fileName(endOffset) + TEMP_SUFFIX;
+    byte[] content = (endOffset + "\n" + newestFile + "\n").getBytes(StandardCharsets.UTF_8);
+    try (OutputStream out = storage.create(tempFile, true)) {
+      out.write(content);
+    } catch (IOException e) {
+      throw new ConnectException("Error writing manifest " + tempFile, e);
+    }
+    transaction.put(tempFile, fileName(endOffset));
+    return endOffset;
+  }
+
+  /**
+   * Commit the manifest written for the given end offset, unless it was already committed by the
+   * WAL, and delete the manifest it replaces.
+   */
+  public synchronized void commit(long endOffset) {
+    String committedFile = fileName(endOffset);
+    storage.commit(committedFile + TEMP_SUFFIX, committedFile);
+    if (committedOffset >= 0 && committedOffset != endOffset) {
+      storage.delete(fileName(committedOffset));
+    }
+    committedOffset = endOffset;
+  }
+
+  /**
+   * Read the newest manifest.
+   *
+   * @return the committed file with the highest end offset, or null if there is no valid manifest
+   */
+  public synchronized Path read() {
+    if (!storage.exists(dir)) {
+      return null;
+    }
+    long endOffset = -1L;
+    for (FileStatus status : storage.list(dir)) {
+      String name = status.getPath().getName();
+      if (name.startsWith(PREFIX) && !name.endsWith(TEMP_SUFFIX)) {
+        try {
+          endOffset = Math.max(endOffset, Long.parseLong(name.substring(PREFIX.length())));
+        } catch (NumberFormatException e) {
+          log.warn("Ignoring invalid manifest {}", status.getPath());
+        }
+      }
+    }
+    if (endOffset < 0) {
+      return null;
+    }
+
+    String manifest = fileName(endOffset);
+    String[] lines;
+    try (SeekableInput in = storage.open(manifest, storage.conf())) {
+      byte[] content = new byte[(int) in.length()];
+      int read = 0;
+      while (read < content.length) {
+        int count = in.read(content, read, content.length - read);
+        if (count < 0) {
+          break;
+        }
+        read += count;
+      }
+      lines = new String(content, 0, read, StandardCharsets.UTF_8).split("\n");
+    } catch (IOException e) {
+      throw new ConnectException("Error reading manifest " + manifest, e);
+    }
+    if (lines.length != 2 || !lines[0].equals(String.valueOf(endOffset))) {
+      log.warn("Ignoring invalid manifest {}", manifest);
+      return null;
+    }
+    Path newestFile = new Path(lines[1]);
+    try {
+      if (FileUtils.extractOffset(newestFile.getName()) != endOffset) {
+        log.warn("Ignoring manifest {} of file {} with another offset", manifest, newestFile);
+        return null;
+      }
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring manifest {} of invalid file {}", manifest, newestFile);
+      return null;
+    }
+    if (!storage.exists(lines[1])) {
+      log.warn("Ignoring manifest {} of missing file {}", manifest, newestFile);
+      return null;
+    }
+    committedOffset = endOffset;
+    return newestFile;
+  }
+
+  /**
+   * Delete the manifests of a topic partition, which are stale once files are committed without
+   * them.
+   */
+  public static void deleteAll(HdfsStorage storage, String logsDir, TopicPartition tp) {
+    String dir = FileUtils.directoryName(storage.url(), logsDir, tp);
+    Iterator<FileStatus> statuses = storage.listIterator(dir);
+    while (statuses.hasNext()) {
+      Path path = statuses.next().getPath();
+      if (path.getName().startsWith(PREFIX)) {
+        log.info("Deleting manifest {} written before manifests were disabled", path);
+        storage.delete(path.toString());
+      }
+    }
+  }
+
+  private String fileName(long endOffset) {
+    return dir + "/" + PREFIX + String.format("%020d", endOffset);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the number of files a task has open for writing within {@code max.open.writers}. The
+ * open files of all the topic partitions of the task are kept in least recently written order,
+ * and opening a file beyond the limit closes the least recently written ones.
+ *
+ * <p>A closed file stays a temp file of its topic partition and is committed with the other files
+ * of that topic partition on its next rotation, so that its offsets stay contiguous.
+ *
+ * <p>Topic partition writers of a task may write from different threads. A writer is never closed
+ * while this class holds its lock, so that it does not wait on a topic partition writer that is
+ * itself waiting to open or write a file.
+ */
+public class OpenWriters {
+  private final int maxOpenWriters;
+  private final Map<Key, Boolean> writers;
+
+  public OpenWriters(int maxOpenWriters) {
+    this.maxOpenWriters = maxOpenWriters;
+    this.writers = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Register a file that was opened, and close the least recently written files of the task while
+   * it has more than {@code max.open.writers} open.
+   */
+  public void opened(TopicPartitionWriter owner, String encodedPartition) {
+    if (maxOpenWriters <= 0) {
+      return;
+    }
+    List<Key> victims = new ArrayList<>();
+    synchronized (this) {
+      writers.put(new Key(owner, encodedPartition), Boolean.TRUE);
+      Iterator<Key> eldest = writers.keySet().iterator();
+      while (writers.size() > maxOpenWriters) {
+        victims.add(eldest.next());
+        eldest.remove();
+      }
+    }
+    for (Key victim : victims) {
+      victim.owner.evictWriter(victim.encodedPartition);
+    }
+  }
+
+  /**
+   * Mark a file as the most recently written one. Files that were closed in the meantime are not
+   * registered again.
+   */
+  public void written(TopicPartitionWriter owner, String encodedPartition) {
+    if (maxOpenWriters <= 0) {
+      return;
+    }
+    synchronized (this) {
+      writers.get(new Key(owner, encodedPartition));
+    }
+  }
+
+  public void closed(TopicPartitionWriter owner, String encodedPartition) {
+    if (maxOpenWriters <= 0) {
+      return;
+    }
+    synchronized (this) {
+      writers.remove(new Key(owner, encodedPartition));
+    }
+  }
+
+  public synchronized int size() {
+    return writers.size();
+  }
+
+  private static class Key {
+    private final TopicPartitionWriter owner;
+    private final String encodedPartition;
+
+    private Key(TopicPartitionWriter owner, String encodedPartition) {
+      this.owner = owner;
+      this.encodedPartition = encodedPartition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return owner == key.owner && encodedPartition.equals(key.encodedPartition);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(owner) + encodedPartition.hashCode();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Estimates the heap used by sink records, to account for the records buffered by a task. The
+ * estimate follows the structure of the key and value and is not meant to be exact.
+ */
+public class RecordSizeEstimator {
+  // Object header plus the fields of the record itself
+  private static final long RECORD_OVERHEAD = 96L;
+  private static final long OBJECT_OVERHEAD = 16L;
+  private static final long REFERENCE_SIZE = 8L;
+
+  public static long estimate(SinkRecord record) {
+    return RECORD_OVERHEAD + estimate(record.key()) + estimate(record.value());
+  }
+
+  static long estimate(Object value) {
+    if (value == null) {
+      return 0L;
+    } else if (value instanceof byte[]) {
+      return OBJECT_OVERHEAD + ((byte[]) value).length;
+    } else if (value instanceof ByteBuffer) {
+      return OBJECT_OVERHEAD + ((ByteBuffer) value).remaining();
+    } else if (value instanceof String) {
+      return OBJECT_OVERHEAD + 2L * ((String) value).length();
+    } else if (value instanceof Struct) {
+      Struct struct = (Struct) value;
+      long size = OBJECT_OVERHEAD;
+      for (Field field : struct.schema().fields()) {
+        size += REFERENCE_SIZE + estimate(struct.get(field));
+      }
+      return size;
+    } else if (value instanceof Map) {
+      long size = OBJECT_OVERHEAD;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        size += OBJECT_OVERHEAD + estimate(entry.getKey()) + estimate(entry.getValue());
+      }
+      return size;
+    } else if (value instanceof Collection) {
+      long size = OBJECT_OVERHEAD;
+      for (Object element : (Collection<?>) value) {
+        size += REFERENCE_SIZE + estimate(element);
+      }
+      return size;
+    }
+    // Boxed primitives, dates and decimals
+    return OBJECT_OVERHEAD + REFERENCE_SIZE;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs;
+
+/**
+ * A record writer that can report the size of the file it is writing, which is used to rotate
+ * files by size, and the memory it holds for data not written out yet, which is accounted against
+ * the memory budget of the task.
+ */
+public interface SizeAwareRecordWriter extends io.confluent.connect.storage.format.RecordWriter {
+
+  /**
+   * Get the number of bytes written so far, including data that is still buffered by the writer.
+   * Writers that cannot tell exactly may return an estimate.
+   *
+   * @return the size of the file in bytes.
+   */
+  long bytesWritten();
+
+  /**
+   * Get an estimate of the memory held by the writer for data that is not written out yet.
+   *
+   * @return the size of the buffered data in bytes.
+   */
+  long bufferedBytes();
+}
@@ -17,6 +17,8 @@ package io.confluent.connect.hdfs;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.errors.DataException;
@@ -31,14 +33,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -49,8 +56,12 @@ import io.confluent.connect.hdfs.filter.CommittedFileFilter;
 import io.confluent.connect.hdfs.filter.TopicPartitionCommittedFileFilter;
 import io.confluent.connect.hdfs.hive.HiveMetaStore;
 import io.confluent.connect.hdfs.hive.HiveUtil;
+import io.confluent.connect.hdfs.metrics.RotationReason;
+import io.confluent.connect.hdfs.metrics.TopicPartitionMetrics;
 import io.confluent.connect.hdfs.partitioner.Partitioner;
+import io.confluent.connect.hdfs.schema.ProjectionCache;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
+import io.confluent.connect.hdfs.wal.TransactionalWAL;
 import io.confluent.connect.storage.common.StorageCommonConfig;
 import io.confluent.connect.storage.hive.HiveConfig;
 import io.confluent.connect.storage.partitioner.PartitionerConfig;
@@ -61,6 +72,7 @@ import io.confluent.connect.storage.wal.WAL;
 
 public class TopicPartitionWriter {
   private static final Logger log = LoggerFactory.getLogger(TopicPartitionWriter.class);
+  private static final int MAX_KNOWN_DIRECTORIES = 1000;
   private static final TimestampExtractor WALLCLOCK =
       new TimeBasedPartitioner.WallclockTimestampExtractor();
   private final io.confluent.connect.storage.format.RecordWriterProvider<HdfsSinkConnectorConfig>
@@ -80,10 +92,25 @@ public class TopicPartitionWriter {
   private final String topicsDir;
   private State state;
   private final Queue<SinkRecord> buffer;
+  // The estimated sizes of the buffered records, in the same order, if memory is tracked
+  private final Queue<Long> bufferedSizes;
   private boolean recovered;
   private final SinkTaskContext context;
+  // The changes to the consumer requested by this writer since they were last applied. The task
+  // context is backed by the consumer, which may only be used by the task's thread, while writers
+  // may recover and write on the DataWriter's pools.
+  private Boolean pauseRequested;
+  private long offsetRequested;
+  private long timeoutRequested;
   private int recordCounter;
   private final int flushSize;
+  private final long flushSizeBytes;
+  private long fileSizeBytes;
+  private final OpenWriters openWriters;
+  private final boolean trackMemory;
+  private long bufferedBytes;
+  private boolean throttled;
+  private long throttledMs;
   private final long rotateIntervalMs;
   private Long lastRotate;
   private final long rotateScheduleIntervalMs;
@@ -97,13 +124,24 @@ public class TopicPartitionWriter {
   private final HdfsSinkConnectorConfig connectorConfig;
   private final AvroData avroData;
   private final Set<String> appended;
+  private final OffsetManifest manifest;
+  // The end offset of the manifest appended to the WAL with the files to commit, if any
+  private long manifestOffset;
+  private final NewestFirstOffsetFinder offsetFinder;
+  // The directories that files were committed to, which are not created again. The storage still
+  // creates the directory of a commit if it was removed in the meantime.
+  private final Set<String> knownDirectories;
   private long offset;
   private final Map<String, Long> startOffsets;
   private final Map<String, Long> offsets;
   private final long timeoutMs;
   private long failureTime;
   private final StorageSchemaCompatibility compatibility;
+  private final ProjectionCache projections;
   private Schema currentSchema;
+  // The newest committed file found on recovery, whose schema is read once when needed
+  private Path latestCommittedFile;
+  private boolean latestSchemaRead;
   private final String extension;
   private final DateTimeZone timeZone;
   private final String hiveDatabase;
@@ -114,6 +152,12 @@ public class TopicPartitionWriter {
   private final ExecutorService executorService;
   private final Queue<Future<Void>> hiveUpdateFutures;
   private final Set<String> hivePartitions;
+  private final ExecutorService commitExecutor;
+  private PendingCommit pendingCommit;
+  private final TopicPartitionMetrics metrics;
+  // Published for the gauges, which are read by the metrics reporters from other threads
+  private volatile int bufferedRecords;
+  private volatile int uncommittedFiles;
 
   public TopicPartitionWriter(
       TopicPartition tp,
@@ -162,6 +206,48 @@ public class TopicPartitionWriter {
       ExecutorService executorService,
       Queue<Future<Void>> hiveUpdateFutures,
       Time time
+  ) {
+    this(
+        tp,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        hiveMetaStore,
+        hive,
+        schemaFileReader,
+        executorService,
+        hiveUpdateFutures,
+        null,
+        null,
+        null,
+        time
+    );
+  }
+
+  public TopicPartitionWriter(
+      TopicPartition tp,
+      HdfsStorage storage,
+      RecordWriterProvider writerProvider,
+      io.confluent.connect.storage.format.RecordWriterProvider<HdfsSinkConnectorConfig>
+          newWriterProvider,
+      Partitioner partitioner,
+      HdfsSinkConnectorConfig connectorConfig,
+      SinkTaskContext context,
+      AvroData avroData,
+      HiveMetaStore hiveMetaStore,
+      HiveUtil hive,
+      io.confluent.connect.storage.format.SchemaFileReader<HdfsSinkConnectorConfig, Path>
+          schemaFileReader,
+      ExecutorService executorService,
+      Queue<Future<Void>> hiveUpdateFutures,
+      ExecutorService commitExecutor,
+      OpenWriters openWriters,
+      TopicPartitionMetrics metrics,
+      Time time
   ) {
     this.time = time;
     this.tp = tp;
@@ -172,11 +258,13 @@ public class TopicPartitionWriter {
     this.newWriterProvider = newWriterProvider;
     this.partitioner = partitioner;
     TimestampExtractor timestampExtractor = null;
+    String pathFormat = null;
     if (partitioner instanceof DataWriter.PartitionerWrapper) {
       io.confluent.connect.storage.partitioner.Partitioner<?> inner =
           ((DataWriter.PartitionerWrapper) partitioner).partitioner;
       if (TimeBasedPartitioner.class.isAssignableFrom(inner.getClass())) {
         timestampExtractor = ((TimeBasedPartitioner) inner).getTimestampExtractor();
+        pathFormat = ((TimeBasedPartitioner) inner).getPathFormat();
       }
     }
     this.timestampExtractor = timestampExtractor != null ? timestampExtractor : WALLCLOCK;
@@ -189,25 +277,47 @@ public class TopicPartitionWriter {
 
     topicsDir = connectorConfig.getString(StorageCommonConfig.TOPICS_DIR_CONFIG);
     flushSize = connectorConfig.getInt(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG);
+    flushSizeBytes = connectorConfig.getLong(HdfsSinkConnectorConfig.FLUSH_SIZE_BYTES_CONFIG);
+    trackMemory = connectorConfig.getLong(HdfsSinkConnectorConfig.MEMORY_BUDGET_BYTES_CONFIG) > 0;
     rotateIntervalMs = connectorConfig.getLong(HdfsSinkConnectorConfig.ROTATE_INTERVAL_MS_CONFIG);
     rotateScheduleIntervalMs = connectorConfig.getLong(HdfsSinkConnectorConfig
         .ROTATE_SCHEDULE_INTERVAL_MS_CONFIG);
     timeoutMs = connectorConfig.getLong(HdfsSinkConnectorConfig.RETRY_BACKOFF_CONFIG);
     compatibility = StorageSchemaCompatibility.getCompatibility(
         connectorConfig.getString(HiveConfig.SCHEMA_COMPATIBILITY_CONFIG));
+    projections = new ProjectionCache(compatibility);
 
     String logsDir = connectorConfig.getString(HdfsSinkConnectorConfig.LOGS_DIR_CONFIG);
     wal = storage.wal(logsDir, tp);
+    manifest = connectorConfig.getBoolean(HdfsSinkConnectorConfig.OFFSETS_MANIFEST_CONFIG)
+               ? new OffsetManifest(storage, logsDir, tp)
+               : null;
+    manifestOffset = -1L;
+    offsetFinder = connectorConfig.getBoolean(HdfsSinkConnectorConfig.OFFSETS_TIME_PRUNING_CONFIG)
+                   && pathFormat != null
+                   && isWallclockBased
+                   ? new NewestFirstOffsetFinder(
+                       storage,
+                       pathFormat,
+                       new Locale(connectorConfig.getString(PartitionerConfig.LOCALE_CONFIG))
+                   )
+                   : null;
 
     buffer = new LinkedList<>();
-    writers = new HashMap<>();
+    bufferedSizes = new LinkedList<>();
+    // Other writers of the task close the least recently written files to stay within
+    // max.open.writers
+    writers = new ConcurrentHashMap<>();
     tempFiles = new HashMap<>();
     appended = new HashSet<>();
+    knownDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
     startOffsets = new HashMap<>();
     offsets = new HashMap<>();
     state = State.RECOVERY_STARTED;
     failureTime = -1L;
     offset = -1L;
+    offsetRequested = -1L;
+    timeoutRequested = -1L;
     if (writerProvider != null) {
       extension = writerProvider.getExtension();
     } else if (newWriterProvider != null) {
@@ -233,6 +343,13 @@ public class TopicPartitionWriter {
     this.executorService = executorService;
     this.hiveUpdateFutures = hiveUpdateFutures;
     hivePartitions = new HashSet<>();
+    this.commitExecutor = commitExecutor;
+    this.openWriters = openWriters != null
+                       ? openWriters
+                       : new OpenWriters(
+                           connectorConfig.getInt(HdfsSinkConnectorConfig.MAX_OPEN_WRITERS_CONFIG)
+                       );
+    this.metrics = metrics != null ? metrics : TopicPartitionMetrics.NOOP;
 
     if (rotateScheduleIntervalMs > 0) {
       timeZone = DateTimeZone.forID(connectorConfig.getString(PartitionerConfig.TIMEZONE_CONFIG));
@@ -242,6 +359,26 @@ public class TopicPartitionWriter {
 
     // Initialize rotation timers
     updateRotationTimers(null);
+
+    // The writers are a concurrent map, since other writers of the task close its files
+    this.metrics.gauge("open-writers", "The number of open temp files", new Measurable() {
+      @Override
+      public double measure(MetricConfig config, long now) {
+        return writers.size();
+      }
+    });
+    this.metrics.gauge("temp-files", "The number of uncommitted temp files", new Measurable() {
+      @Override
+      public double measure(MetricConfig config, long now) {
+        return uncommittedFiles;
+      }
+    });
+    this.metrics.gauge("buffered-records", "The number of records buffered", new Measurable() {
+      @Override
+      public double measure(MetricConfig config, long now) {
+        return bufferedRecords;
+      }
+    });
   }
 
   @SuppressWarnings("fallthrough")
@@ -324,6 +461,7 @@ public class TopicPartitionWriter {
       }
       updateRotationTimers(null);
     }
+    pollPendingCommit();
     while (!buffer.isEmpty()) {
       try {
         switch (state) {
@@ -331,22 +469,13 @@ public class TopicPartitionWriter {
             pause();
             nextState();
           case WRITE_PARTITION_PAUSED:
-            if (currentSchema == null) {
-              if (compatibility != StorageSchemaCompatibility.NONE && offset != -1) {
-                String topicDir = FileUtils.topicDirectory(url, topicsDir, tp.topic());
-                CommittedFileFilter filter = new TopicPartitionCommittedFileFilter(tp);
-                FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
-                    storage,
-                    new Path(topicDir),
-                    filter
-                );
-                if (fileStatusWithMaxOffset != null) {
-                  currentSchema = schemaFileReader.getSchema(
-                      connectorConfig,
-                      fileStatusWithMaxOffset.getPath()
-                  );
-                }
+            if (currentSchema == null && !latestSchemaRead) {
+              if (compatibility != StorageSchemaCompatibility.NONE && latestCommittedFile != null) {
+                currentSchema = schemaFileReader.getSchema(connectorConfig, latestCommittedFile);
               }
+              // Files committed since recovery were written with the current schema, so there is
+              // nothing to gain from looking again, e.g. for schemaless records
+              latestSchemaRead = true;
             }
             SinkRecord record = buffer.peek();
             currentRecord = record;
@@ -359,33 +488,55 @@ public class TopicPartitionWriter {
                 alterHiveSchema();
               }
               if (recordCounter > 0) {
+                metrics.rotated(RotationReason.SCHEMA);
                 nextState();
               } else {
                 break;
               }
             } else {
-              if (shouldRotateAndMaybeUpdateTimers(currentRecord, now)) {
-                log.info(
-                    "Starting commit and rotation for topic partition {} with start offsets {} "
-                        + "and end offsets {}",
-                    tp,
-                    startOffsets,
-                    offsets
-                );
-                nextState();
-                // Fall through and try to rotate immediately
-              } else {
-                SinkRecord projectedRecord = compatibility.project(record, null, currentSchema);
-                writeRecord(projectedRecord);
-                buffer.poll();
-                break;
+              SinkRecord projectedRecord = projections.project(record, currentSchema);
+              String encodedPartition = partitioner.encodePartition(projectedRecord);
+              RotationReason reason = checkRotationAndMaybeUpdateTimers(
+                  currentRecord,
+                  encodedPartition,
+                  now
+              );
+              if (reason == null) {
+                if (writeRecord(projectedRecord, encodedPartition)) {
+                  buffer.poll();
+                  bufferedRecords = buffer.size();
+                  if (trackMemory) {
+                    bufferedBytes -= bufferedSizes.poll();
+                  }
+                  break;
+                }
+                // The file was closed by another writer of the task in the meantime
+                reason = RotationReason.OPEN_WRITERS;
               }
+              metrics.rotated(reason);
+              log.info(
+                  "Starting commit and rotation for topic partition {} with start offsets {} "
+                      + "and end offsets {}",
+                  tp,
+                  startOffsets,
+                  offsets
+              );
+              nextState();
+              // Fall through and try to rotate immediately
             }
           case SHOULD_ROTATE:
             updateRotationTimers(currentRecord);
             closeTempFile();
             nextState();
           case TEMP_FILE_CLOSED:
+            if (commitExecutor != null) {
+              // Hand the closed files over to the committer and continue with new temp files
+              // right away. At most one commit per topic partition is in flight.
+              awaitPendingCommit();
+              submitCommit();
+              setState(State.WRITE_PARTITION_PAUSED);
+              break;
+            }
             appendToWAL();
             nextState();
           case WAL_APPENDED:
@@ -409,22 +560,29 @@ public class TopicPartitionWriter {
     if (buffer.isEmpty()) {
       // committing files after waiting for rotateIntervalMs time but less than flush.size
       // records available
-      if (recordCounter > 0 && shouldRotateAndMaybeUpdateTimers(currentRecord, now)) {
+      RotationReason reason = recordCounter > 0
+                              ? checkRotationAndMaybeUpdateTimers(currentRecord, null, now)
+                              : null;
+      if (reason == null && throttled && !writers.isEmpty()) {
+        // No record arrives to rotate the files of a paused topic partition, and the data they
+        // buffer would keep the task over its memory budget and the partition paused
+        reason = RotationReason.MEMORY;
+      }
+      boolean rotate = reason != null;
+      if (rotate) {
+        metrics.rotated(reason);
         log.info(
-            "committing files after waiting for rotateIntervalMs time but less than flush.size "
-                + "records available."
+            "Committing files of topic partition {} with less than flush.size records available, "
+                + "rotation reason: {}",
+            tp,
+            reason
         );
         updateRotationTimers(currentRecord);
-
-        try {
-          closeTempFile();
-          appendToWAL();
-          commitFile();
-        } catch (ConnectException e) {
-          log.error("Exception on topic partition {}: ", tp, e);
-          failureTime = time.milliseconds();
-          setRetryTimeout(timeoutMs);
-        }
+      }
+      // Files that were closed by a failed attempt must be committed before any new record is
+      // written, since their temp files would otherwise be reused
+      if ((rotate || state == State.TEMP_FILE_CLOSED) && !closeAndCommit()) {
+        return;
       }
 
       resume();
@@ -435,9 +593,25 @@ public class TopicPartitionWriter {
   public void close() throws ConnectException {
     log.debug("Closing TopicPartitionWriter {}", tp);
     List<Exception> exceptions = new ArrayList<>();
+    if (pendingCommit != null) {
+      // The WAL must not be closed under a running commit. A failed commit is not retried here,
+      // its files are recovered from the WAL, or its records consumed again, on the next start.
+      try {
+        getUninterruptibly(pendingCommit.future);
+        completeCommit();
+      } catch (ExecutionException e) {
+        log.error("Error committing files for {} when closing TopicPartitionWriter:", tp, e);
+        exceptions.add(e);
+      }
+      pendingCommit = null;
+    }
     for (String encodedPartition : tempFiles.keySet()) {
       try {
-        if (writers.containsKey(encodedPartition)) {
+        // Files closed to stay within max.open.writers are discarded as well, unless they were
+        // already appended to the WAL
+        if (writers.containsKey(encodedPartition)
+            || (startOffsets.containsKey(encodedPartition)
+                && state.compareTo(State.TEMP_FILE_CLOSED) < 0)) {
           log.debug("Discarding in progress tempfile {} for {} {}",
               tempFiles.get(encodedPartition), tp, encodedPartition
           );
@@ -465,6 +639,8 @@ public class TopicPartitionWriter {
     }
     startOffsets.clear();
     offsets.clear();
+    updateUncommittedFiles();
+    metrics.close();
 
     if (exceptions.size() != 0) {
       StringBuilder sb = new StringBuilder();
@@ -478,6 +654,79 @@ public class TopicPartitionWriter {
 
   public void buffer(SinkRecord sinkRecord) {
     buffer.add(sinkRecord);
+    bufferedRecords = buffer.size();
+    if (trackMemory) {
+      long size = RecordSizeEstimator.estimate(sinkRecord);
+      bufferedSizes.add(size);
+      bufferedBytes += size;
+    }
+  }
+
+  public void buffer(Collection<SinkRecord> sinkRecords) {
+    buffer.addAll(sinkRecords);
+    bufferedRecords = buffer.size();
+    if (trackMemory) {
+      for (SinkRecord sinkRecord : sinkRecords) {
+        long size = RecordSizeEstimator.estimate(sinkRecord);
+        bufferedSizes.add(size);
+        bufferedBytes += size;
+      }
+    }
+  }
+
+  /**
+   * Whether {@link #write()} has anything to do: records are buffered, recovery, a commit or a
+   * retry is pending, or the open files are due for time-based rotation.
+   */
+  boolean needsWrite() {
+    if (state != State.WRITE_STARTED || !buffer.isEmpty() || pendingCommit != null) {
+      return true;
+    }
+    // Without a record only the wallclock and scheduled rotations apply, which update no timers
+    return recordCounter > 0
+        && checkRotationAndMaybeUpdateTimers(null, null, time.milliseconds()) != null;
+  }
+
+  /**
+   * Get an estimate of the memory used by the records buffered by this writer and by the data
+   * buffered by its open files.
+   */
+  long memoryUsage() {
+    long usage = bufferedBytes;
+    for (io.confluent.connect.storage.format.RecordWriter writer : writers.values()) {
+      if (writer instanceof SizeAwareRecordWriter) {
+        usage += ((SizeAwareRecordWriter) writer).bufferedBytes();
+      }
+    }
+    return usage;
+  }
+
+  /**
+   * Stop consuming the topic partition until {@link #unthrottle()} is called, to release memory.
+   * Its open files are committed once its buffered records are written.
+   */
+  void throttle() {
+    log.debug("Pausing topic partition {} to stay within the memory budget", tp);
+    throttled = true;
+    throttledMs = time.milliseconds();
+    pause();
+  }
+
+  void unthrottle() {
+    log.debug("Resuming topic partition {} within the memory budget", tp);
+    throttled = false;
+    // Otherwise the writer is still busy with the partition and resumes it once done
+    if (state == State.WRITE_STARTED) {
+      resume();
+    }
+  }
+
+  public boolean isThrottled() {
+    return throttled;
+  }
+
+  long throttledMs() {
+    return throttledMs;
   }
 
   public long offset() {
@@ -504,7 +753,14 @@ public class TopicPartitionWriter {
     this.state = state;
   }
 
-  private boolean shouldRotateAndMaybeUpdateTimers(SinkRecord currentRecord, long now) {
+  /**
+   * Get the reason to rotate the open files before writing the given record, if any.
+   */
+  private RotationReason checkRotationAndMaybeUpdateTimers(
+      SinkRecord currentRecord,
+      String encodedPartition,
+      long now
+  ) {
     Long currentTimestamp = null;
     if (isWallclockBased) {
       currentTimestamp = now;
@@ -519,6 +775,13 @@ public class TopicPartitionWriter {
         && currentTimestamp - lastRotate >= rotateIntervalMs;
     boolean scheduledRotation = rotateScheduleIntervalMs > 0 && now >= nextScheduledRotate;
     boolean messageSizeRotation = recordCounter >= flushSize;
+    boolean byteSizeRotation = flushSizeBytes > 0 && fileSizeBytes >= flushSizeBytes;
+    // The file of the record was closed to stay within max.open.writers but is not committed yet.
+    // Rotating commits all the files of the topic partition, since committing only some of them
+    // would move the recovered offset past records that are not committed yet.
+    boolean openWritersRotation = encodedPartition != null
+        && startOffsets.containsKey(encodedPartition)
+        && !writers.containsKey(encodedPartition);
 
     log.trace(
         "Should apply periodic time-based rotation (rotateIntervalMs: '{}', lastRotate: "
@@ -545,28 +808,98 @@ public class TopicPartitionWriter {
         messageSizeRotation
     );
 
-    return periodicRotation || scheduledRotation || messageSizeRotation;
+    log.trace(
+        "Should apply byte size-based rotation (size {} >= flush size bytes {})? {}",
+        fileSizeBytes,
+        flushSizeBytes,
+        byteSizeRotation
+    );
+
+    log.trace(
+        "Should apply open writers rotation (closed file of {} not committed yet)? {}",
+        encodedPartition,
+        openWritersRotation
+    );
+
+    if (messageSizeRotation || byteSizeRotation) {
+      return RotationReason.SIZE;
+    } else if (periodicRotation) {
+      return RotationReason.INTERVAL;
+    } else if (scheduledRotation) {
+      return RotationReason.SCHEDULE;
+    } else if (openWritersRotation) {
+      return RotationReason.OPEN_WRITERS;
+    }
+    return null;
   }
 
   private void readOffset() throws ConnectException {
+    if (manifest != null) {
+      Path newestFile = manifest.read();
+      if (newestFile != null) {
+        latestCommittedFile = newestFile;
+        offset = FileUtils.extractOffset(newestFile.getName()) + 1;
+        return;
+      }
+      log.info("No valid offset manifest for {}, listing its committed files", tp);
+    } else {
+      OffsetManifest.deleteAll(
+          storage,
+          connectorConfig.getString(HdfsSinkConnectorConfig.LOGS_DIR_CONFIG),
+          tp
+      );
+    }
+    if (connectorConfig.getBoolean(HdfsSinkConnectorConfig.DIRECTORY_LISTING_CACHE_CONFIG)) {
+      Path fileWithMaxOffset = storage.committedFiles().fileWithMaxOffset(tp);
+      if (fileWithMaxOffset != null) {
+        latestCommittedFile = fileWithMaxOffset;
+        offset = FileUtils.extractOffset(latestCommittedFile.getName()) + 1;
+      }
+      return;
+    }
     String path = FileUtils.topicDirectory(url, topicsDir, tp.topic());
     CommittedFileFilter filter = new TopicPartitionCommittedFileFilter(tp);
-    FileStatus fileStatusWithMaxOffset = FileUtils.fileStatusWithMaxOffset(
-        storage,
-        new Path(path),
-        filter
-    );
+    FileStatus fileStatusWithMaxOffset = offsetFinder != null
+        ? offsetFinder.fileStatusWithMaxOffset(new Path(path), filter)
+        : FileUtils.fileStatusWithMaxOffset(storage, new Path(path), filter);
     if (fileStatusWithMaxOffset != null) {
-      offset = FileUtils.extractOffset(fileStatusWithMaxOffset.getPath().getName()) + 1;
+      latestCommittedFile = fileStatusWithMaxOffset.getPath();
+      offset = FileUtils.extractOffset(latestCommittedFile.getName()) + 1;
     }
   }
 
   private void pause() {
-    context.pause(tp);
+    pauseRequested = Boolean.TRUE;
   }
 
   private void resume() {
-    context.resume(tp);
+    if (throttled) {
+      return;
+    }
+    pauseRequested = Boolean.FALSE;
+  }
+
+  /**
+   * Apply the changes to the consumer requested by this writer since the last call, in the order
+   * the consumer needs them. Must be called by the task's thread.
+   */
+  void updateContext() {
+    if (offsetRequested >= 0) {
+      context.offset(tp, offsetRequested);
+      offsetRequested = -1L;
+    }
+    if (pauseRequested != null) {
+      if (pauseRequested) {
+        context.pause(tp);
+      } else {
+        context.resume(tp);
+      }
+      pauseRequested = null;
+    }
+    if (timeoutRequested >= 0) {
+      context.timeout(timeoutRequested);
+      timeoutRequested = -1L;
+    }
   }
 
   private io.confluent.connect.storage.format.RecordWriter getWriter(
@@ -645,7 +978,7 @@ public class TopicPartitionWriter {
       // explicitly to forcibly override any committed offsets.
       if (offset > 0) {
         log.debug("Resetting offset for {} to {}", tp, offset);
-        context.offset(tp, offset);
+        offsetRequested = offset;
       } else {
         // The offset was not found, so rather than forcibly set the offset to 0 we let the
         // consumer decide where to start based upon standard consumer offsets (if available)
@@ -658,28 +991,91 @@ public class TopicPartitionWriter {
     }
   }
 
-  private void writeRecord(SinkRecord record) {
+  /**
+   * Write a record to the file of its encoded partition.
+   *
+   * @return false if the file was closed to stay within max.open.writers and has to be committed
+   *     before the record can be written.
+   */
+  private boolean writeRecord(SinkRecord record, String encodedPartition) {
+    boolean opened;
+    synchronized (writers) {
+      opened = !writers.containsKey(encodedPartition);
+      if (opened && startOffsets.containsKey(encodedPartition)) {
+        return false;
+      }
+      io.confluent.connect.storage.format.RecordWriter writer = getWriter(record, encodedPartition);
+      writer.write(record);
+      if (flushSizeBytes > 0 && writer instanceof SizeAwareRecordWriter) {
+        // Rotate once the largest of the open files reaches the configured size
+        fileSizeBytes = Math.max(fileSizeBytes, ((SizeAwareRecordWriter) writer).bytesWritten());
+      }
+    }
+    if (opened) {
+      openWriters.opened(this, encodedPartition);
+    } else {
+      openWriters.written(this, encodedPartition);
+    }
+
     if (offset == -1) {
       offset = record.kafkaOffset();
     }
 
-    String encodedPartition = partitioner.encodePartition(record);
-    io.confluent.connect.storage.format.RecordWriter writer = getWriter(record, encodedPartition);
-    writer.write(record);
-
     if (!startOffsets.containsKey(encodedPartition)) {
       startOffsets.put(encodedPartition, record.kafkaOffset());
+      updateUncommittedFiles();
     }
     offsets.put(encodedPartition, record.kafkaOffset());
     recordCounter++;
+    metrics.recordWritten();
+    return true;
+  }
+
+  private boolean closeAndCommit() {
+    try {
+      closeTempFile();
+      setState(State.TEMP_FILE_CLOSED);
+      if (commitExecutor != null) {
+        awaitPendingCommit();
+        submitCommit();
+      } else {
+        appendToWAL();
+        commitFile();
+      }
+      return true;
+    } catch (ConnectException e) {
+      log.error("Exception on topic partition {}: ", tp, e);
+      failureTime = time.milliseconds();
+      setRetryTimeout(timeoutMs);
+      return false;
+    }
   }
 
   private void closeTempFile(String encodedPartition) {
-    if (writers.containsKey(encodedPartition)) {
+    synchronized (writers) {
+      if (!writers.containsKey(encodedPartition)) {
+        return;
+      }
       io.confluent.connect.storage.format.RecordWriter writer = writers.get(encodedPartition);
+      long start = System.nanoTime();
       writer.close();
+      metrics.fileClosed(System.nanoTime() - start);
+      if (writer instanceof SizeAwareRecordWriter) {
+        metrics.bytesWritten(((SizeAwareRecordWriter) writer).bytesWritten());
+      }
       writers.remove(encodedPartition);
     }
+    openWriters.closed(this, encodedPartition);
+  }
+
+  /**
+   * Close the file of an encoded partition to stay within max.open.writers. The file is committed
+   * with the other files of this topic partition on its next rotation. Called by the writer of any
+   * topic partition of the task.
+   */
+  void evictWriter(String encodedPartition) {
+    log.debug("Closing file of {} {} to stay within the open writers limit", tp, encodedPartition);
+    closeTempFile(encodedPartition);
   }
 
   private void closeTempFile() {
@@ -688,37 +1084,37 @@ public class TopicPartitionWriter {
     }
   }
 
-  private void appendToWAL(String encodedPartition) {
-    String tempFile = tempFiles.get(encodedPartition);
-    if (appended.contains(tempFile)) {
-      return;
-    }
-    if (!startOffsets.containsKey(encodedPartition)) {
-      return;
-    }
-    long startOffset = startOffsets.get(encodedPartition);
-    long endOffset = offsets.get(encodedPartition);
-    String directory = getDirectory(encodedPartition);
-    String committedFile = FileUtils.committedFileName(
-        url,
-        topicsDir,
-        directory,
-        tp,
-        startOffset,
-        endOffset,
-        extension,
-        zeroPadOffsetFormat
-    );
-    wal.append(tempFile, committedFile);
-    appended.add(tempFile);
-  }
-
   private void appendToWAL() {
-    beginAppend();
+    long start = System.nanoTime();
+    Map<String, String> files = new HashMap<>();
     for (String encodedPartition : tempFiles.keySet()) {
-      appendToWAL(encodedPartition);
+      if (startOffsets.containsKey(encodedPartition)) {
+        files.put(
+            tempFiles.get(encodedPartition),
+            committedFileName(
+                encodedPartition,
+                startOffsets.get(encodedPartition),
+                offsets.get(encodedPartition)
+            )
+        );
+      }
+    }
+    if (manifest != null) {
+      manifestOffset = manifest.addTo(files);
     }
-    endAppend();
+    if (wal instanceof TransactionalWAL) {
+      ((TransactionalWAL) wal).appendTransaction(files);
+    } else {
+      beginAppend();
+      for (Map.Entry<String, String> entry : files.entrySet()) {
+        if (!appended.contains(entry.getKey())) {
+          wal.append(entry.getKey(), entry.getValue());
+          appended.add(entry.getKey());
+        }
+      }
+      endAppend();
+    }
+    metrics.walAppended(System.nanoTime() - start);
   }
 
   private void beginAppend() {
@@ -738,6 +1134,10 @@ public class TopicPartitionWriter {
     for (String encodedPartition : tempFiles.keySet()) {
       commitFile(encodedPartition);
     }
+    if (manifestOffset >= 0) {
+      manifest.commit(manifestOffset);
+      manifestOffset = -1L;
+    }
   }
 
   private void commitFile(String encodedPartition) {
@@ -747,28 +1147,137 @@ public class TopicPartitionWriter {
     long startOffset = startOffsets.get(encodedPartition);
     long endOffset = offsets.get(encodedPartition);
     String tempFile = tempFiles.get(encodedPartition);
-    String directory = getDirectory(encodedPartition);
-    String committedFile = FileUtils.committedFileName(
+    String committedFile = committedFileName(encodedPartition, startOffset, endOffset);
+    commitFile(encodedPartition, tempFile, committedFile);
+    startOffsets.remove(encodedPartition);
+    offsets.remove(encodedPartition);
+    updateUncommittedFiles();
+    offset = offset + recordCounter;
+    recordCounter = 0;
+    fileSizeBytes = 0L;
+  }
+
+  private void commitFile(String encodedPartition, String tempFile, String committedFile) {
+    String directoryName = FileUtils.directoryName(url, topicsDir, getDirectory(encodedPartition));
+    if (!knownDirectories.contains(directoryName)) {
+      if (knownDirectories.size() >= MAX_KNOWN_DIRECTORIES) {
+        // Time-based partitioners keep moving on to new directories
+        knownDirectories.clear();
+      }
+      storage.create(directoryName);
+      knownDirectories.add(directoryName);
+    }
+    long start = System.nanoTime();
+    storage.commitFile(tempFile, committedFile);
+    metrics.fileCommitted(System.nanoTime() - start);
+    log.info("Committed {} for {}", committedFile, tp);
+  }
+
+  private String committedFileName(String encodedPartition, long startOffset, long endOffset) {
+    return FileUtils.committedFileName(
         url,
         topicsDir,
-        directory,
+        getDirectory(encodedPartition),
         tp,
         startOffset,
         endOffset,
         extension,
         zeroPadOffsetFormat
     );
+  }
 
-    String directoryName = FileUtils.directoryName(url, topicsDir, directory);
-    if (!storage.exists(directoryName)) {
-      storage.create(directoryName);
-    }
-    storage.commit(tempFile, committedFile);
-    startOffsets.remove(encodedPartition);
-    offsets.remove(encodedPartition);
-    offset = offset + recordCounter;
+  /**
+   * Hand the closed temp files of the current rotation over to the commit executor. The temp
+   * files are forgotten by this writer so that new ones are opened for the records that follow.
+   */
+  private void submitCommit() {
+    pendingCommit = new PendingCommit(tempFiles, startOffsets, offsets, recordCounter);
+    pendingCommit.submit();
+    tempFiles.clear();
+    startOffsets.clear();
+    offsets.clear();
+    updateUncommittedFiles();
     recordCounter = 0;
-    log.info("Committed {} for {}", committedFile, tp);
+    fileSizeBytes = 0L;
+  }
+
+  /**
+   * Complete the commit running in the background if it has finished. A failed commit is
+   * submitted again once the retry backoff has elapsed.
+   */
+  private void pollPendingCommit() {
+    if (pendingCommit == null) {
+      return;
+    }
+    if (pendingCommit.failed) {
+      if (time.milliseconds() - failureTime >= timeoutMs) {
+        pendingCommit.submit();
+      }
+      return;
+    }
+    if (pendingCommit.future.isDone()) {
+      try {
+        awaitPendingCommit();
+      } catch (ConnectException e) {
+        log.error("Exception on topic partition {}: ", tp, e);
+      }
+    }
+  }
+
+  /**
+   * Wait for the commit running in the background, if any. A failed commit is reported to the
+   * caller and submitted again once the retry backoff has elapsed, so that the files of the next
+   * rotation are never committed before the ones of the previous.
+   */
+  private void awaitPendingCommit() throws ConnectException {
+    if (pendingCommit == null) {
+      return;
+    }
+    if (pendingCommit.failed) {
+      if (time.milliseconds() - failureTime < timeoutMs) {
+        throw new ConnectException("Backing off before committing files for " + tp + " again");
+      }
+      pendingCommit.submit();
+    }
+    try {
+      getUninterruptibly(pendingCommit.future);
+    } catch (ExecutionException e) {
+      pendingCommit.failed = true;
+      failureTime = time.milliseconds();
+      setRetryTimeout(timeoutMs);
+      throw new ConnectException("Failed to commit files for " + tp, e.getCause());
+    }
+    completeCommit();
+  }
+
+  private void completeCommit() {
+    // Offsets move forward only once the files are durably committed
+    offset = offset + pendingCommit.recordCount;
+    pendingCommit = null;
+    updateUncommittedFiles();
+  }
+
+  private void updateUncommittedFiles() {
+    uncommittedFiles = startOffsets.size()
+        + (pendingCommit != null ? pendingCommit.starts.size() : 0);
+  }
+
+  private static void getUninterruptibly(Future<Void> future) throws ExecutionException {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          future.get();
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 
   private void deleteTempFile(String encodedPartition) {
@@ -776,10 +1285,11 @@ public class TopicPartitionWriter {
   }
 
   private void setRetryTimeout(long timeoutMs) {
-    context.timeout(timeoutMs);
+    timeoutRequested = timeoutMs;
   }
 
   private void createHiveTable() {
+    final long submitted = System.nanoTime();
     Future<Void> future = executorService.submit(new Callable<Void>() {
       @Override
       public Void call() throws HiveMetaStoreException {
@@ -787,6 +1297,8 @@ public class TopicPartitionWriter {
           hive.createTable(hiveDatabase, tp.topic(), currentSchema, partitioner);
         } catch (Throwable e) {
           log.error("Creating Hive table threw unexpected error", e);
+        } finally {
+          metrics.hiveUpdated(System.nanoTime() - submitted);
         }
         return null;
       }
@@ -795,6 +1307,7 @@ public class TopicPartitionWriter {
   }
 
   private void alterHiveSchema() {
+    final long submitted = System.nanoTime();
     Future<Void> future = executorService.submit(new Callable<Void>() {
       @Override
       public Void call() throws HiveMetaStoreException {
@@ -802,6 +1315,8 @@ public class TopicPartitionWriter {
           hive.alterSchema(hiveDatabase, tp.topic(), currentSchema);
         } catch (Throwable e) {
           log.error("Altering Hive schema threw unexpected error", e);
+        } finally {
+          metrics.hiveUpdated(System.nanoTime() - submitted);
         }
         return null;
       }
@@ -810,6 +1325,7 @@ public class TopicPartitionWriter {
   }
 
   private void addHivePartition(final String location) {
+    final long submitted = System.nanoTime();
     Future<Void> future = executorService.submit(new Callable<Void>() {
       @Override
       public Void call() throws Exception {
@@ -817,6 +1333,8 @@ public class TopicPartitionWriter {
           hiveMetaStore.addPartition(hiveDatabase, tp.topic(), location);
         } catch (Throwable e) {
           log.error("Adding Hive partition threw unexpected error", e);
+        } finally {
+          metrics.hiveUpdated(System.nanoTime() - submitted);
         }
         return null;
       }
@@ -824,6 +1342,75 @@ public class TopicPartitionWriter {
     hiveUpdateFutures.add(future);
   }
 
+  /**
+   * The closed temp files of a rotation, committed on the commit executor. The commit appends a
+   * complete transaction to the WAL before any file is renamed, and can be safely retried since
+   * renames of files that were already committed are skipped.
+   */
+  private class PendingCommit implements Callable<Void> {
+    private final Map<String, String> files;
+    private final Map<String, Long> starts;
+    private final Map<String, Long> ends;
+    private final int recordCount;
+    private Future<Void> future;
+    // Set when the commit failed, until it is submitted again
+    private boolean failed;
+
+    PendingCommit(
+        Map<String, String> files,
+        Map<String, Long> starts,
+        Map<String, Long> ends,
+        int recordCount
+    ) {
+      this.files = new HashMap<>(files);
+      this.starts = new HashMap<>(starts);
+      this.ends = new HashMap<>(ends);
+      this.recordCount = recordCount;
+    }
+
+    void submit() {
+      failed = false;
+      future = commitExecutor.submit(this);
+    }
+
+    @Override
+    public Void call() throws ConnectException {
+      Map<String, String> committedFiles = new HashMap<>();
+      for (Map.Entry<String, Long> entry : starts.entrySet()) {
+        String encodedPartition = entry.getKey();
+        committedFiles.put(
+            encodedPartition,
+            committedFileName(encodedPartition, entry.getValue(), ends.get(encodedPartition))
+        );
+      }
+
+      long start = System.nanoTime();
+      Map<String, String> transaction = new HashMap<>();
+      for (Map.Entry<String, String> entry : committedFiles.entrySet()) {
+        transaction.put(files.get(entry.getKey()), entry.getValue());
+      }
+      long endOffset = manifest != null ? manifest.addTo(transaction) : -1L;
+      if (wal instanceof TransactionalWAL) {
+        ((TransactionalWAL) wal).appendTransaction(transaction);
+      } else {
+        wal.append(WAL.beginMarker, "");
+        for (Map.Entry<String, String> entry : transaction.entrySet()) {
+          wal.append(entry.getKey(), entry.getValue());
+        }
+        wal.append(WAL.endMarker, "");
+      }
+      metrics.walAppended(System.nanoTime() - start);
+
+      for (Map.Entry<String, String> entry : committedFiles.entrySet()) {
+        commitFile(entry.getKey(), files.get(entry.getKey()), entry.getValue());
+      }
+      if (endOffset >= 0) {
+        manifest.commit(endOffset);
+      }
+      return null;
+    }
+  }
+
   private enum State {
     RECOVERY_STARTED,
     RECOVERY_PARTITION_PAUSED,
@@ -30,12 +30,15 @@ import java.io.IOException;
 
 import io.confluent.connect.avro.AvroData;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.SizeAwareRecordWriter;
 import io.confluent.kafka.serializers.NonRecordContainer;
 
 public class AvroRecordWriterProvider
     implements io.confluent.connect.storage.format.RecordWriterProvider<HdfsSinkConnectorConfig> {
   private static final Logger log = LoggerFactory.getLogger(AvroRecordWriterProvider.class);
   private static final String EXTENSION = ".avro";
+  // The writer buffers a block of records up to the default sync interval before writing it out
+  private static final long BLOCK_BUFFER_SIZE = 64 * 1024L;
   private final AvroData avroData;
 
   AvroRecordWriterProvider(AvroData avroData) {
@@ -52,10 +55,11 @@ public class AvroRecordWriterProvider
       final HdfsSinkConnectorConfig conf,
       final String filename
   ) {
-    return new io.confluent.connect.storage.format.RecordWriter() {
+    return new SizeAwareRecordWriter() {
       final DataFileWriter<Object> writer = new DataFileWriter<>(new GenericDatumWriter<>());
       final Path path = new Path(filename);
       Schema schema = null;
+      FSDataOutputStream out = null;
 
       @Override
       public void write(SinkRecord record) {
@@ -63,8 +67,7 @@ public class AvroRecordWriterProvider
           schema = record.valueSchema();
           try {
             log.info("Opening record writer for: {}", filename);
-            final FSDataOutputStream out = path.getFileSystem(conf.getHadoopConfiguration())
-                .create(path);
+            out = path.getFileSystem(conf.getHadoopConfiguration()).create(path);
             org.apache.avro.Schema avroSchema = avroData.fromConnectSchema(schema);
             writer.setCodec(CodecFactory.fromString(conf.getAvroCodec()));
             writer.create(avroSchema, out);
@@ -99,6 +102,22 @@ public class AvroRecordWriterProvider
 
       @Override
       public void commit() {}
+
+      @Override
+      public long bytesWritten() {
+        // The writer buffers records until a block is complete, so the size excludes at most the
+        // block that is currently being filled.
+        try {
+          return out != null ? out.getPos() : 0L;
+        } catch (IOException e) {
+          throw new DataException(e);
+        }
+      }
+
+      @Override
+      public long bufferedBytes() {
+        return out != null ? BLOCK_BUFFER_SIZE : 0L;
+      }
     };
   }
 }
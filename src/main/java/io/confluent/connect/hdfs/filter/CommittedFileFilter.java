@@ -14,19 +14,15 @@
 
 package io.confluent.connect.hdfs.filter;
 
-import io.confluent.connect.hdfs.HdfsSinkConnectorConstants;
+import io.confluent.connect.hdfs.CommittedFileName;
 
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 
-import java.util.regex.Matcher;
-
 
 public class CommittedFileFilter implements PathFilter {
   @Override
   public boolean accept(Path path) {
-    String filename = path.getName();
-    Matcher m = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(filename);
-    return m.matches();
+    return CommittedFileName.isCommittedFile(path.getName());
   }
 }
@@ -16,9 +16,7 @@ package io.confluent.connect.hdfs.filter;
 
 import org.apache.hadoop.fs.Path;
 
-import io.confluent.connect.hdfs.HdfsSinkConnectorConstants;
-
-import java.util.regex.Matcher;
+import io.confluent.connect.hdfs.CommittedFileName;
 
 public class TopicCommittedFileFilter extends CommittedFileFilter {
   private String topic;
@@ -29,16 +27,6 @@ public class TopicCommittedFileFilter extends CommittedFileFilter {
 
   @Override
   public boolean accept(Path path) {
-    if (!super.accept(path)) {
-      return false;
-    }
-    String filename = path.getName();
-    Matcher m = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(filename);
-    // NB: if statement has side effect of enabling group() call
-    if (!m.matches()) {
-      throw new AssertionError("match expected because of CommittedFileFilter");
-    }
-    String topic = m.group(HdfsSinkConnectorConstants.PATTERN_TOPIC_GROUP);
-    return topic.equals(this.topic);
+    return CommittedFileName.isCommittedFile(path.getName(), topic);
   }
 }
@@ -17,9 +17,7 @@ package io.confluent.connect.hdfs.filter;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.common.TopicPartition;
 
-import java.util.regex.Matcher;
-
-import io.confluent.connect.hdfs.HdfsSinkConnectorConstants;
+import io.confluent.connect.hdfs.CommittedFileName;
 
 public class TopicPartitionCommittedFileFilter extends CommittedFileFilter {
   private TopicPartition tp;
@@ -30,17 +28,6 @@ public class TopicPartitionCommittedFileFilter extends CommittedFileFilter {
 
   @Override
   public boolean accept(Path path) {
-    if (!super.accept(path)) {
-      return false;
-    }
-    String filename = path.getName();
-    Matcher m = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(filename);
-    // NB: if statement has side effect of enabling group() call
-    if (!m.matches()) {
-      throw new AssertionError("match expected because of CommittedFileFilter");
-    }
-    String topic = m.group(HdfsSinkConnectorConstants.PATTERN_TOPIC_GROUP);
-    int partition = Integer.parseInt(m.group(HdfsSinkConnectorConstants.PATTERN_PARTITION_GROUP));
-    return topic.equals(tp.topic()) && partition == tp.partition();
+    return CommittedFileName.isCommittedFile(path.getName(), tp.topic(), tp.partition());
   }
 }
@@ -16,6 +16,7 @@ package io.confluent.connect.hdfs.json;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.connect.data.Struct;
 import org.apache.kafka.connect.errors.ConnectException;
@@ -25,10 +26,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.SizeAwareRecordWriter;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.RecordWriter;
 import io.confluent.connect.storage.format.RecordWriterProvider;
@@ -67,9 +68,10 @@ public class JsonRecordWriterProvider implements RecordWriterProvider<HdfsSinkCo
   @Override
   public RecordWriter getRecordWriter(final HdfsSinkConnectorConfig conf, final String filename) {
     try {
-      return new RecordWriter() {
+      return new SizeAwareRecordWriter() {
         final Path path = new Path(filename);
-        final OutputStream out = path.getFileSystem(conf.getHadoopConfiguration()).create(path);
+        final FSDataOutputStream out =
+            path.getFileSystem(conf.getHadoopConfiguration()).create(path);
         final JsonGenerator writer = mapper.getFactory()
             .createGenerator(out)
             .setRootValueSeparator(null);
@@ -99,6 +101,20 @@ public class JsonRecordWriterProvider implements RecordWriterProvider<HdfsSinkCo
         @Override
         public void commit() {}
 
+        @Override
+        public long bytesWritten() {
+          try {
+            return out.getPos() + bufferedBytes();
+          } catch (IOException e) {
+            throw new ConnectException(e);
+          }
+        }
+
+        @Override
+        public long bufferedBytes() {
+          return Math.max(writer.getOutputBuffered(), 0);
+        }
+
         @Override
         public void close() {
           try {
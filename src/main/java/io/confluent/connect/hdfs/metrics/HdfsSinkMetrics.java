@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.metrics;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.utils.Time;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metrics of a task of the HDFS connector, reported through JMX in the
+ * {@value #JMX_PREFIX} domain. Metrics are kept per topic partition, and tagged with the
+ * connector name, the task id, the topic and the partition.
+ */
+public class HdfsSinkMetrics {
+  public static final String JMX_PREFIX = "kafka.connect.hdfs";
+
+  private final Metrics metrics;
+  private final Map<String, String> tags;
+  private final Map<TopicPartition, TopicPartitionMetrics> partitions;
+
+  public HdfsSinkMetrics(String connectorName, int taskId) {
+    this(
+        connectorName,
+        taskId,
+        new Metrics(
+            new MetricConfig(),
+            Collections.<MetricsReporter>singletonList(new JmxReporter(JMX_PREFIX)),
+            Time.SYSTEM
+        )
+    );
+  }
+
+  public HdfsSinkMetrics(String connectorName, int taskId, Metrics metrics) {
+    this.metrics = metrics;
+    tags = new LinkedHashMap<>();
+    tags.put("connector", connectorName);
+    tags.put("task", String.valueOf(taskId));
+    partitions = new HashMap<>();
+  }
+
+  /**
+   * Register the metrics of a topic partition. The metrics previously registered for the same
+   * topic partition, if any, are removed.
+   */
+  public synchronized TopicPartitionMetrics forPartition(TopicPartition tp) {
+    TopicPartitionMetrics previous = partitions.remove(tp);
+    if (previous != null) {
+      previous.remove();
+    }
+    Map<String, String> partitionTags = new LinkedHashMap<>(tags);
+    partitionTags.put("topic", tp.topic());
+    partitionTags.put("partition", String.valueOf(tp.partition()));
+    TopicPartitionMetrics partitionMetrics =
+        new TopicPartitionMetrics(this, tp, metrics, partitionTags);
+    partitions.put(tp, partitionMetrics);
+    return partitionMetrics;
+  }
+
+  synchronized void close(TopicPartitionMetrics partitionMetrics) {
+    // The metrics of a writer that was replaced belong to the new writer
+    if (partitions.get(partitionMetrics.topicPartition()) == partitionMetrics) {
+      partitions.remove(partitionMetrics.topicPartition());
+      partitionMetrics.remove();
+    }
+  }
+
+  public synchronized void close() {
+    partitions.clear();
+    metrics.close();
+  }
+}
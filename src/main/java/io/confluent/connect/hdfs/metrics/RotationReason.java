@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.metrics;
+
+import java.util.Locale;
+
+/**
+ * The reasons why the open files of a topic partition are committed.
+ */
+public enum RotationReason {
+  // The number of records or bytes written reached flush.size or flush.size.bytes
+  SIZE,
+  // rotate.interval.ms elapsed since the last rotation
+  INTERVAL,
+  // The next rotate.schedule.interval.ms boundary was reached
+  SCHEDULE,
+  // A record with a new schema arrived
+  SCHEMA,
+  // A record arrived for a file that was closed to stay within max.open.writers
+  OPEN_WRITERS,
+  // The topic partition was paused to stay within memory.budget.bytes
+  MEMORY;
+
+  public String metricName() {
+    return name().toLowerCase(Locale.ROOT).replace('_', '-');
+  }
+}
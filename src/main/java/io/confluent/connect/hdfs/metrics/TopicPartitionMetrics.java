@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Meter;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of a topic partition: the rates of records and bytes written, the rotations by
+ * reason, and the latencies of closing files, appending to the WAL, committing files and
+ * updating Hive. The bytes written are only registered once a file reports its size, since not
+ * every format does. {@link #NOOP} records nothing, for writers created without metrics.
+ */
+public class TopicPartitionMetrics {
+  public static final String GROUP = "hdfs-sink-partition-metrics";
+  public static final TopicPartitionMetrics NOOP =
+      new TopicPartitionMetrics(null, null, null, null);
+
+  private static final int PERCENTILES_SIZE_IN_BYTES = 4000;
+  private static final double MAX_LATENCY_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private final HdfsSinkMetrics parent;
+  private final TopicPartition tp;
+  private final Metrics metrics;
+  private final Map<String, String> tags;
+  private final List<String> sensorNames;
+  private final List<MetricName> gaugeNames;
+  private final Sensor recordsWritten;
+  private Sensor bytesWritten;
+  private final Map<RotationReason, Sensor> rotations;
+  private final Sensor closeTime;
+  private final Sensor walAppendTime;
+  private final Sensor commitTime;
+  private final Sensor hiveUpdateTime;
+
+  TopicPartitionMetrics(
+      HdfsSinkMetrics parent,
+      TopicPartition tp,
+      Metrics metrics,
+      Map<String, String> tags
+  ) {
+    this.parent = parent;
+    this.tp = tp;
+    this.metrics = metrics;
+    this.tags = tags;
+    sensorNames = new ArrayList<>();
+    gaugeNames = new ArrayList<>();
+    recordsWritten = meter("record-write", "records written");
+    rotations = new EnumMap<>(RotationReason.class);
+    for (RotationReason reason : RotationReason.values()) {
+      rotations.put(
+          reason,
+          meter("rotation-" + reason.metricName(), "rotations by " + reason.metricName())
+      );
+    }
+    closeTime = latency("file-close", "to close the temp files of a rotation");
+    walAppendTime = latency("wal-append", "to append and sync the WAL entries of a rotation");
+    commitTime = latency("file-commit", "to commit a temp file");
+    hiveUpdateTime = latency("hive-update", "from submitting a Hive update to its completion");
+  }
+
+  TopicPartition topicPartition() {
+    return tp;
+  }
+
+  /**
+   * Register a gauge, which is removed with the other metrics of the topic partition.
+   */
+  public void gauge(String name, String description, Measurable measurable) {
+    if (metrics == null) {
+      return;
+    }
+    MetricName metricName = metrics.metricName(name, GROUP, description, tags);
+    metrics.addMetric(metricName, measurable);
+    gaugeNames.add(metricName);
+  }
+
+  public void recordWritten() {
+    record(recordsWritten, 1);
+  }
+
+  public void fileClosed(long nanos) {
+    record(closeTime, toMillis(nanos));
+  }
+
+  public void bytesWritten(long bytes) {
+    if (bytesWritten == null) {
+      bytesWritten = meter("byte-write", "bytes of the files closed");
+    }
+    record(bytesWritten, bytes);
+  }
+
+  public void rotated(RotationReason reason) {
+    record(rotations.get(reason), 1);
+  }
+
+  public void walAppended(long nanos) {
+    record(walAppendTime, toMillis(nanos));
+  }
+
+  public void fileCommitted(long nanos) {
+    record(commitTime, toMillis(nanos));
+  }
+
+  public void hiveUpdated(long nanos) {
+    record(hiveUpdateTime, toMillis(nanos));
+  }
+
+  /**
+   * Remove the metrics of the topic partition, unless they were registered again since.
+   */
+  public void close() {
+    if (parent != null) {
+      parent.close(this);
+    }
+  }
+
+  void remove() {
+    for (String sensorName : sensorNames) {
+      metrics.removeSensor(sensorName);
+    }
+    for (MetricName gaugeName : gaugeNames) {
+      metrics.removeMetric(gaugeName);
+    }
+  }
+
+  private Sensor meter(String name, String description) {
+    if (metrics == null) {
+      return null;
+    }
+    Sensor sensor = sensor(name);
+    sensor.add(new Meter(
+        metrics.metricName(name + "-rate", GROUP, "The number of " + description + " per second",
+            tags),
+        metrics.metricName(name + "-total", GROUP, "The total number of " + description, tags)
+    ));
+    return sensor;
+  }
+
+  private Sensor latency(String name, String description) {
+    if (metrics == null) {
+      return null;
+    }
+    Sensor sensor = sensor(name);
+    sensor.add(
+        metrics.metricName(name + "-time-avg", GROUP, "The average time in ms " + description,
+            tags),
+        new Avg()
+    );
+    sensor.add(
+        metrics.metricName(name + "-time-max", GROUP, "The maximum time in ms " + description,
+            tags),
+        new Max()
+    );
+    sensor.add(new Percentiles(
+        PERCENTILES_SIZE_IN_BYTES,
+        MAX_LATENCY_MS,
+        Percentiles.BucketSizing.LINEAR,
+        new Percentile(
+            metrics.metricName(name + "-time-p50", GROUP, "The median time in ms " + description,
+                tags),
+            50
+        ),
+        new Percentile(
+            metrics.metricName(name + "-time-p99", GROUP,
+                "The 99th percentile time in ms " + description, tags),
+            99
+        )
+    ));
+    return sensor;
+  }
+
+  private Sensor sensor(String name) {
+    String sensorName = "hdfs-sink." + tags.get("task") + "." + tp + "." + name;
+    sensorNames.add(sensorName);
+    return metrics.sensor(sensorName);
+  }
+
+  private static void record(Sensor sensor, double value) {
+    if (sensor != null) {
+      sensor.record(value);
+    }
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -30,6 +30,7 @@ import java.io.IOException;
 
 import io.confluent.connect.avro.AvroData;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.SizeAwareRecordWriter;
 
 public class ParquetRecordWriterProvider
     implements io.confluent.connect.storage.format.RecordWriterProvider<HdfsSinkConnectorConfig> {
@@ -51,13 +52,18 @@ public class ParquetRecordWriterProvider
       final HdfsSinkConnectorConfig conf,
       final String filename
   ) {
-    return new io.confluent.connect.storage.format.RecordWriter() {
+    return new SizeAwareRecordWriter() {
       final CompressionCodecName compressionCodecName = CompressionCodecName.SNAPPY;
       final int blockSize = 256 * 1024 * 1024;
       final int pageSize = 64 * 1024;
       final Path path = new Path(filename);
       Schema schema = null;
       ParquetWriter<GenericRecord> writer = null;
+      // The data size when the last row group was flushed to the file. Parquet flushes a row
+      // group once its pages, which are compressed as they fill up, reach the block size, and
+      // writes about as many bytes, so a flush is assumed each time the data size has grown by
+      // the block size since the previous one.
+      long flushedBytes = 0L;
 
       @Override
       public void write(SinkRecord record) {
@@ -102,6 +108,10 @@ public class ParquetRecordWriterProvider
         } catch (IOException e) {
           throw new ConnectException(e);
         }
+        long dataSize = writer.getDataSize();
+        if (dataSize - flushedBytes >= blockSize) {
+          flushedBytes = dataSize;
+        }
       }
 
       @Override
@@ -117,6 +127,18 @@ public class ParquetRecordWriterProvider
 
       @Override
       public void commit() {}
+
+      @Override
+      public long bytesWritten() {
+        // Includes the row group that is still buffered in memory
+        return writer != null ? writer.getDataSize() : 0L;
+      }
+
+      @Override
+      public long bufferedBytes() {
+        // Only the current row group is held in memory, the data size includes the flushed ones
+        return writer != null ? Math.max(0L, writer.getDataSize() - flushedBytes) : 0L;
+      }
     };
   }
 }
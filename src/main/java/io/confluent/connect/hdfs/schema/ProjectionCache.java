@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.schema;
+
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaProjector;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.SchemaProjectorException;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.confluent.connect.storage.schema.StorageSchemaCompatibility;
+
+/**
+ * Projects the values of sink records to the current schema of a topic partition. For structs,
+ * the mapping from the fields of the source schema to the fields of the target schema is compiled
+ * once per pair of schemas and reused for the records that follow, instead of resolving every
+ * field by name for every record. Anything else is projected by the schema compatibility.
+ *
+ * <p>The projection of the last pair of schemas is reused as long as the same schema instances
+ * arrive, which is the case for converters that cache the schemas they create. Otherwise, schemas
+ * are looked up by equality among the most recently used pairs. Instances are not thread-safe.
+ */
+public class ProjectionCache {
+  private static final int MAX_ENTRIES = 1000;
+  private static final StructProjection UNSUPPORTED = new StructProjection(null, null);
+  private static final StructProjection IDENTITY = new StructProjection(null, null);
+
+  private final StorageSchemaCompatibility compatibility;
+  private final Map<SchemaPair, StructProjection> projections =
+      new LinkedHashMap<SchemaPair, StructProjection>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SchemaPair, StructProjection> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+  private Schema lastSource;
+  private Schema lastTarget;
+  private StructProjection lastProjection;
+
+  public ProjectionCache(StorageSchemaCompatibility compatibility) {
+    this.compatibility = compatibility;
+  }
+
+  public SinkRecord project(SinkRecord record, Schema currentSchema) {
+    Schema sourceSchema = record.valueSchema();
+    if (sourceSchema == currentSchema) {
+      return record;
+    }
+    if (compatibility == StorageSchemaCompatibility.NONE
+        || sourceSchema == null
+        || currentSchema == null
+        || !(record.value() instanceof Struct)) {
+      return compatibility.project(record, null, currentSchema);
+    }
+
+    StructProjection projection;
+    if (sourceSchema == lastSource && currentSchema == lastTarget) {
+      projection = lastProjection;
+    } else {
+      SchemaPair schemas = new SchemaPair(sourceSchema, currentSchema);
+      projection = projections.get(schemas);
+      if (projection == null) {
+        projection = compile(sourceSchema, currentSchema);
+        projections.put(schemas, projection);
+      }
+      lastSource = sourceSchema;
+      lastTarget = currentSchema;
+      lastProjection = projection;
+    }
+
+    if (projection == IDENTITY) {
+      return record;
+    } else if (projection == UNSUPPORTED) {
+      return compatibility.project(record, null, currentSchema);
+    }
+    return record.newRecord(
+        record.topic(),
+        record.kafkaPartition(),
+        record.keySchema(),
+        record.key(),
+        currentSchema,
+        projection.apply((Struct) record.value(), currentSchema),
+        record.timestamp()
+    );
+  }
+
+  private static StructProjection compile(Schema source, Schema target) {
+    if (source.equals(target)) {
+      return IDENTITY;
+    }
+    // Leave any case that SchemaProjector would reject, or treat specially, to the compatibility
+    if (source.type() != Schema.Type.STRUCT
+        || target.type() != Schema.Type.STRUCT
+        || source.isOptional() != target.isOptional()
+        || !Objects.equals(source.name(), target.name())
+        || !Objects.equals(source.parameters(), target.parameters())) {
+      return UNSUPPORTED;
+    }
+
+    List<Field> targetFields = target.fields();
+    Field[] sourceFields = new Field[targetFields.size()];
+    Object[] values = new Object[targetFields.size()];
+    for (Field targetField : targetFields) {
+      int index = targetField.index();
+      Field sourceField = source.field(targetField.name());
+      Schema targetFieldSchema = targetField.schema();
+      if (sourceField != null) {
+        sourceFields[index] = sourceField;
+        // Fields with equal schemas are copied as they are, others are projected one by one
+        values[index] = sourceField.schema().equals(targetFieldSchema) ? null : targetField;
+      } else if (targetFieldSchema.isOptional()) {
+        // Missing optional fields are left unset
+        values[index] = null;
+      } else if (targetFieldSchema.defaultValue() != null) {
+        values[index] = targetFieldSchema.defaultValue();
+      } else {
+        return UNSUPPORTED;
+      }
+    }
+    return new StructProjection(sourceFields, values);
+  }
+
+  /**
+   * The compiled mapping from a source to a target struct schema. For every field of the target
+   * schema, if the source schema has a field with the same name, the source field is set and the
+   * value is either null, if the value is copied, or the target field, if the value is projected.
+   * Otherwise, the value is the default value to set, if any. Fields are referred to by index, so
+   * a projection applies to any schemas equal to the ones it was compiled for.
+   */
+  private static class StructProjection {
+    private final Field[] sourceFields;
+    private final Object[] values;
+
+    StructProjection(Field[] sourceFields, Object[] values) {
+      this.sourceFields = sourceFields;
+      this.values = values;
+    }
+
+    Struct apply(Struct source, Schema target) {
+      Struct projected = new Struct(target);
+      for (Field targetField : target.fields()) {
+        int index = targetField.index();
+        Field sourceField = sourceFields[index];
+        if (sourceField == null) {
+          if (values[index] != null) {
+            projected.put(targetField, values[index]);
+          }
+          continue;
+        }
+
+        Object value = source.get(sourceField);
+        if (values[index] != null) {
+          try {
+            value = SchemaProjector.project(sourceField.schema(), value, targetField.schema());
+          } catch (SchemaProjectorException e) {
+            throw new SchemaProjectorException("Error projecting " + sourceField.name(), e);
+          }
+        }
+        projected.put(targetField, value);
+      }
+      return projected;
+    }
+  }
+
+  private static class SchemaPair {
+    private final Schema source;
+    private final Schema target;
+    private final int hash;
+
+    SchemaPair(Schema source, Schema target) {
+      this.source = source;
+      this.target = target;
+      this.hash = 31 * source.hashCode() + target.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SchemaPair)) {
+        return false;
+      }
+      SchemaPair that = (SchemaPair) o;
+      return hash == that.hash && source.equals(that.source) && target.equals(that.target);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.storage;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.connect.errors.ConnectException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walks a directory tree of a {@link Storage}, folding its files and leaf directories into a
+ * result. Each directory is listed page by page; with more than one thread, its subdirectories
+ * are walked in parallel on a fork-join pool while at most that many listings are in flight.
+ */
+public class DirectoryTraversal {
+
+  /**
+   * Folds the entries of a directory tree into a result. A directory's files are folded before
+   * the results of its subdirectories are merged, in listing order. With more than one thread,
+   * the methods are called concurrently, but never for the same result.
+   */
+  public interface Collector<T> {
+    T empty();
+
+    T file(T result, FileStatus file);
+
+    /**
+     * Called for each directory below the root that contains no subdirectories.
+     */
+    T leaf(T result, FileStatus directory);
+
+    T merge(T result, T child);
+  }
+
+  private final Storage storage;
+  private final ForkJoinPool pool;
+  private final Semaphore listings;
+
+  public DirectoryTraversal(Storage storage, int threads) {
+    this.storage = storage;
+    this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    this.listings = new Semaphore(threads);
+  }
+
+  /**
+   * Walks the tree below {@code root}, which is treated as empty if it does not exist.
+   */
+  public <T> T traverse(Path root, Collector<T> collector) {
+    Task<T> task = new Task<>(root, null, collector);
+    if (pool == null) {
+      return task.compute();
+    }
+    return pool.invoke(task);
+  }
+
+  public void close() {
+    if (pool != null) {
+      pool.shutdown();
+      try {
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private Iterator<FileStatus> list(Path path) {
+    if (storage instanceof HdfsStorage) {
+      return ((HdfsStorage) storage).listIterator(path.toString());
+    }
+    if (!storage.exists(path.toString())) {
+      return Collections.emptyIterator();
+    }
+    return storage.list(path.toString()).iterator();
+  }
+
+  private class Task<T> extends RecursiveTask<T> {
+    private final Path path;
+    private final FileStatus status;
+    private final Collector<T> collector;
+
+    Task(Path path, FileStatus status, Collector<T> collector) {
+      this.path = path;
+      this.status = status;
+      this.collector = collector;
+    }
+
+    @Override
+    protected T compute() {
+      T result = collector.empty();
+      List<Task<T>> children = new ArrayList<>();
+      try {
+        listings.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ConnectException("Interrupted while listing " + path, e);
+      }
+      try {
+        Iterator<FileStatus> statuses = list(path);
+        while (statuses.hasNext()) {
+          FileStatus child = statuses.next();
+          if (child.isDirectory()) {
+            Task<T> task = new Task<>(child.getPath(), child, collector);
+            if (pool != null) {
+              task.fork();
+            }
+            children.add(task);
+          } else {
+            result = collector.file(result, child);
+          }
+        }
+      } finally {
+        listings.release();
+      }
+
+      if (children.isEmpty()) {
+        return status == null ? result : collector.leaf(result, status);
+      }
+      for (Task<T> task : children) {
+        result = collector.merge(result, pool != null ? task.join() : task.compute());
+      }
+      return result;
+    }
+  }
+}
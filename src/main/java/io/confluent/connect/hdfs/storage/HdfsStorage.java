@@ -20,18 +20,31 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.ConnectException;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
+import io.confluent.connect.hdfs.CommittedFileIndex;
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
 import io.confluent.connect.hdfs.wal.FSWAL;
+import io.confluent.connect.hdfs.wal.LocalWAL;
+import io.confluent.connect.hdfs.wal.SharedWAL;
 import io.confluent.connect.hdfs.wal.WAL;
+import io.confluent.connect.storage.common.StorageCommonConfig;
 
 public class HdfsStorage
     implements io.confluent.connect.storage.Storage<HdfsSinkConnectorConfig, List<FileStatus>>,
@@ -40,6 +53,9 @@ public class HdfsStorage
   private final FileSystem fs;
   private final HdfsSinkConnectorConfig conf;
   private final String url;
+  private SharedWAL sharedWal;
+  private DirectoryTraversal traversal;
+  private CommittedFileIndex committedFiles;
 
   // Visible for testing.
   protected HdfsStorage(HdfsSinkConnectorConfig conf,  String url, FileSystem fs) {
@@ -71,6 +87,79 @@ public class HdfsStorage
     }
   }
 
+  /**
+   * Lists a directory page by page rather than in a single response. A directory that does not
+   * exist is listed as empty.
+   */
+  public Iterator<FileStatus> listIterator(String path) {
+    final RemoteIterator<FileStatus> statuses;
+    try {
+      statuses = fs.listStatusIterator(new Path(path));
+    } catch (FileNotFoundException e) {
+      return Collections.emptyIterator();
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+    return new Iterator<FileStatus>() {
+      @Override
+      public boolean hasNext() {
+        try {
+          return statuses.hasNext();
+        } catch (FileNotFoundException e) {
+          return false;
+        } catch (IOException e) {
+          throw new ConnectException(e);
+        }
+      }
+
+      @Override
+      public FileStatus next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        try {
+          return statuses.next();
+        } catch (IOException e) {
+          throw new ConnectException(e);
+        }
+      }
+    };
+  }
+
+  public synchronized DirectoryTraversal traversal() {
+    if (traversal == null) {
+      traversal = new DirectoryTraversal(
+          this,
+          conf.getInt(HdfsSinkConnectorConfig.DIRECTORY_LISTING_THREADS_CONFIG)
+      );
+    }
+    return traversal;
+  }
+
+  /**
+   * Returns the index of the committed files of this task, which is kept up to date with the
+   * files committed through this storage.
+   */
+  public synchronized CommittedFileIndex committedFiles() {
+    if (committedFiles == null) {
+      committedFiles = new CommittedFileIndex(
+          this,
+          conf.getString(StorageCommonConfig.TOPICS_DIR_CONFIG)
+      );
+    }
+    return committedFiles;
+  }
+
+  private void committed(Path committedFile) {
+    CommittedFileIndex index;
+    synchronized (this) {
+      index = committedFiles;
+    }
+    if (index != null) {
+      index.committed(committedFile);
+    }
+  }
+
   @Override
   public OutputStream append(String filename) {
     throw new UnsupportedOperationException();
@@ -112,6 +201,68 @@ public class HdfsStorage
     renameFile(tempFile, committedFile);
   }
 
+  /**
+   * Commit a temp file written by this task. Unlike {@link #commit(String, String)}, which also
+   * replays WAL transactions whose files may be committed already, this fails unless the
+   * committed file exists afterwards.
+   */
+  public void commitFile(String tempFile, String committedFile) {
+    final Path srcPath = new Path(tempFile);
+    final Path dstPath = new Path(committedFile);
+    try {
+      if (!rename(srcPath, dstPath) && !fs.exists(dstPath)) {
+        throw new ConnectException("Error committing " + tempFile + " to " + committedFile);
+      }
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+    committed(dstPath);
+  }
+
+  /**
+   * Commit the given temp files to their committed files, skipping the files that are already
+   * committed and the temp files that no longer exist. Which files exist is read with one listing
+   * per directory rather than checked file by file.
+   *
+   * @param files the committed file of each temp file
+   */
+  public void commit(Map<String, String> files) {
+    Map<Path, Set<String>> listings = new HashMap<>();
+    try {
+      for (Map.Entry<String, String> entry : files.entrySet()) {
+        Path srcPath = new Path(entry.getKey());
+        Path dstPath = new Path(entry.getValue());
+        if (srcPath.equals(dstPath)
+            || exists(listings, dstPath)
+            || !exists(listings, srcPath)) {
+          continue;
+        }
+        if (rename(srcPath, dstPath)) {
+          committed(dstPath);
+        }
+      }
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
+  private boolean exists(Map<Path, Set<String>> listings, Path path) throws IOException {
+    Path dir = path.getParent();
+    Set<String> names = listings.get(dir);
+    if (names == null) {
+      names = new HashSet<>();
+      try {
+        for (FileStatus status : fs.listStatus(dir)) {
+          names.add(status.getPath().getName());
+        }
+      } catch (FileNotFoundException e) {
+        // Nothing was written to the directory yet
+      }
+      listings.put(dir, names);
+    }
+    return names.contains(path.getName());
+  }
+
   @Override
   public void delete(String filename) {
     try {
@@ -123,6 +274,16 @@ public class HdfsStorage
 
   @Override
   public void close() {
+    synchronized (this) {
+      if (sharedWal != null) {
+        sharedWal.stop();
+        sharedWal = null;
+      }
+      if (traversal != null) {
+        traversal.close();
+        traversal = null;
+      }
+    }
     if (fs != null) {
       try {
         fs.close();
@@ -133,6 +294,18 @@ public class HdfsStorage
   }
 
   public WAL wal(String topicsDir, TopicPartition topicPart) {
+    String backend = conf.getString(HdfsSinkConnectorConfig.WAL_BACKEND_CONFIG);
+    if (HdfsSinkConnectorConfig.WAL_BACKEND_LOCAL.equals(backend)) {
+      return new LocalWAL(topicsDir, topicPart, this);
+    }
+    if (conf.getBoolean(HdfsSinkConnectorConfig.WAL_SHARED_CONFIG)) {
+      synchronized (this) {
+        if (sharedWal == null) {
+          sharedWal = new SharedWAL(topicsDir, this);
+        }
+        return sharedWal.forPartition(topicPart);
+      }
+    }
     return new FSWAL(topicsDir, topicPart, this);
   }
 
@@ -153,14 +326,33 @@ public class HdfsStorage
     try {
       final Path srcPath = new Path(sourcePath);
       final Path dstPath = new Path(targetPath);
-      if (fs.exists(srcPath)) {
-        fs.rename(srcPath, dstPath);
+      if (rename(srcPath, dstPath)) {
+        committed(dstPath);
       }
     } catch (IOException e) {
       throw new ConnectException(e);
     }
   }
 
+  /**
+   * Rename with a single call to the NameNode when it succeeds. Only a failed rename looks up
+   * why: a missing source was committed before or never written, and a missing destination
+   * directory is created before renaming again.
+   */
+  private boolean rename(Path srcPath, Path dstPath) throws IOException {
+    try {
+      if (fs.rename(srcPath, dstPath)) {
+        return true;
+      }
+    } catch (FileNotFoundException e) {
+      // Some file systems report a missing source or destination directory this way
+    }
+    if (!fs.exists(srcPath)) {
+      return false;
+    }
+    return fs.mkdirs(dstPath.getParent()) && fs.rename(srcPath, dstPath);
+  }
+
   @Override
   public SeekableInput open(String filename, HdfsSinkConnectorConfig conf) {
     try {
@@ -27,6 +27,7 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 
 import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.SizeAwareRecordWriter;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.storage.format.RecordWriter;
 import io.confluent.connect.storage.format.RecordWriterProvider;
@@ -39,6 +40,7 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
   private static final Logger log = LoggerFactory.getLogger(StringRecordWriterProvider.class);
   private static final String EXTENSION = ".txt";
   private static final int WRITER_BUFFER_SIZE = 128 * 1024;
+  private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().length();
   private final HdfsStorage storage;
 
   /**
@@ -58,7 +60,7 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
   @Override
   public RecordWriter getRecordWriter(final HdfsSinkConnectorConfig conf, final String filename) {
     try {
-      return new RecordWriter() {
+      return new SizeAwareRecordWriter() {
         final Path path = new Path(filename);
         final OutputStream out = path.getFileSystem(conf.getHadoopConfiguration()).create(path);
         final OutputStreamWriter streamWriter = new OutputStreamWriter(
@@ -66,6 +68,7 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
             Charset.defaultCharset()
         );
         final BufferedWriter writer = new BufferedWriter(streamWriter, WRITER_BUFFER_SIZE);
+        long size = 0L;
 
         @Override
         public void write(SinkRecord record) {
@@ -74,6 +77,7 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
             String value = (String) record.value();
             writer.write(value);
             writer.newLine();
+            size += value.length() + LINE_SEPARATOR_LENGTH;
           } catch (IOException e) {
             throw new ConnectException(e);
           }
@@ -82,6 +86,18 @@ public class StringRecordWriterProvider implements RecordWriterProvider<HdfsSink
         @Override
         public void commit() {}
 
+        @Override
+        public long bytesWritten() {
+          // Estimated from the number of characters, which is exact for single byte charsets
+          return size;
+        }
+
+        @Override
+        public long bufferedBytes() {
+          // The buffer of the writer holds two bytes per character
+          return 2L * Math.min(size, WRITER_BUFFER_SIZE);
+        }
+
         @Override
         public void close() {
           try {
@@ -14,7 +14,9 @@
 
 package io.confluent.connect.hdfs.wal;
 
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.ipc.RemoteException;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.ConnectException;
@@ -31,16 +33,22 @@ import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
 import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.hdfs.wal.WALFile.Reader;
 import io.confluent.connect.hdfs.wal.WALFile.Writer;
+import io.confluent.connect.storage.common.StorageCommonConfig;
 
-public class FSWAL implements WAL {
+public class FSWAL implements TransactionalWAL {
 
   private static final Logger log = LoggerFactory.getLogger(FSWAL.class);
+  // The initial size of the end of the log read to find its last complete transaction
+  private static final long TAIL_WINDOW_BYTES = 64 * 1024L;
 
   private WALFile.Writer writer = null;
   private WALFile.Reader reader = null;
   private String logFile = null;
   private HdfsSinkConnectorConfig conf = null;
   private HdfsStorage storage = null;
+  private final boolean tailRecovery;
+  // Whether the log is waiting for the lease of its previous owner to be recovered
+  private boolean leaseRecoveryStarted = false;
 
   public FSWAL(String logsDir, TopicPartition topicPart, HdfsStorage storage)
       throws ConnectException {
@@ -48,6 +56,7 @@ public class FSWAL implements WAL {
     this.conf = storage.conf();
     String url = storage.url();
     logFile = FileUtils.logFileName(url, logsDir, topicPart);
+    tailRecovery = conf.getBoolean(HdfsSinkConnectorConfig.WAL_TAIL_RECOVERY_CONFIG);
   }
 
   @Override
@@ -65,37 +74,104 @@ public class FSWAL implements WAL {
     }
   }
 
+  @Override
+  public void appendTransaction(Map<String, String> files) throws ConnectException {
+    appendTransaction(files, true);
+  }
+
+  /**
+   * Append a transaction, and either sync it to the disks of the datanodes or only flush it to
+   * the HDFS pipeline, where it is visible to readers and survives the loss of the worker.
+   */
+  void appendTransaction(Map<String, String> files, boolean sync) throws ConnectException {
+    try {
+      acquireLease();
+      // A transaction is only applied once its end marker is read, so syncing after the end
+      // marker alone is enough
+      writer.append(new WALEntry(beginMarker), new WALEntry(""));
+      for (Map.Entry<String, String> entry : files.entrySet()) {
+        writer.append(new WALEntry(entry.getKey()), new WALEntry(entry.getValue()));
+      }
+      writer.append(new WALEntry(endMarker), new WALEntry(""));
+      if (sync) {
+        writer.hsync();
+      } else {
+        writer.hflush();
+      }
+    } catch (IOException e) {
+      log.error("Error appending WAL file: {}, {}", logFile, e);
+      close();
+      throw new DataException(e);
+    }
+  }
+
+  /**
+   * Acquire the lease on the log without waiting for it. If the log is still held by its previous
+   * owner, recovery of its lease is started and a {@link ConnectException} is thrown, so that the
+   * topic partition is retried later while the other topic partitions of the task keep going.
+   */
   public void acquireLease() throws ConnectException {
-    long sleepIntervalMs = WALConstants.INITIAL_SLEEP_INTERVAL_MS;
-    while (sleepIntervalMs < WALConstants.MAX_SLEEP_INTERVAL_MS) {
-      try {
-        if (writer == null) {
-          writer = WALFile.createWriter(conf, Writer.file(new Path(logFile)),
-                                        Writer.appendIfExists(true));
-          log.info("Successfully acquired lease for {}", logFile);
-        }
-        break;
-      } catch (RemoteException e) {
-        if (e.getClassName().equals(WALConstants.LEASE_EXCEPTION_CLASS_NAME)) {
-          log.info("Cannot acquire lease on WAL {}", logFile);
-          try {
-            Thread.sleep(sleepIntervalMs);
-          } catch (InterruptedException ie) {
-            throw new ConnectException(ie);
-          }
-          sleepIntervalMs = sleepIntervalMs * 2;
-        } else {
-          throw new ConnectException(e);
-        }
-      } catch (IOException e) {
-        throw new DataException("Error creating writer for log file " + logFile, e);
+    if (writer != null) {
+      return;
+    }
+    try {
+      if (leaseRecoveryStarted && storage.exists(logFile) && !isLogClosed()) {
+        throw new ConnectException("Lease on WAL " + logFile + " is being recovered, will retry.");
+      }
+      writer = createWriter(storage, logFile);
+      leaseRecoveryStarted = false;
+      log.info("Successfully acquired lease for {}", logFile);
+    } catch (RemoteException e) {
+      if (e.getClassName().equals(WALConstants.LEASE_EXCEPTION_CLASS_NAME)) {
+        log.info("Cannot acquire lease on WAL {}, recovering it", logFile);
+        recoverLease();
+        throw new ConnectException("Cannot acquire lease on WAL " + logFile + ", will retry.");
+      } else {
+        throw new ConnectException(e);
       }
+    } catch (IOException e) {
+      throw new DataException("Error creating writer for log file " + logFile, e);
     }
-    if (sleepIntervalMs >= WALConstants.MAX_SLEEP_INTERVAL_MS) {
-      throw new ConnectException("Cannot acquire lease after timeout, will retry.");
+  }
+
+  /**
+   * Revoke the lease of the previous owner of the log, which closes the log once its last block
+   * is recovered.
+   */
+  private void recoverLease() {
+    try {
+      FileSystem fs = new Path(logFile).getFileSystem(conf.getHadoopConfiguration());
+      if (fs instanceof DistributedFileSystem) {
+        leaseRecoveryStarted = !((DistributedFileSystem) fs).recoverLease(new Path(logFile));
+      }
+    } catch (IOException e) {
+      throw new ConnectException("Error recovering lease on WAL " + logFile, e);
     }
   }
 
+  private boolean isLogClosed() throws IOException {
+    FileSystem fs = new Path(logFile).getFileSystem(conf.getHadoopConfiguration());
+    return !(fs instanceof DistributedFileSystem)
+        || ((DistributedFileSystem) fs).isFileClosed(new Path(logFile));
+  }
+
+  /**
+   * Create a writer appending to the given log, in the compact format if it is a new log and
+   * the compact format is enabled.
+   */
+  static WALFile.Writer createWriter(HdfsStorage storage, String logFile) throws IOException {
+    HdfsSinkConnectorConfig conf = storage.conf();
+    if (!conf.getBoolean(HdfsSinkConnectorConfig.WAL_COMPACT_CONFIG)) {
+      return WALFile.createWriter(conf, Writer.file(new Path(logFile)),
+                                  Writer.appendIfExists(true));
+    }
+    // The temp and committed file names written to the log all start with this prefix
+    String prefix = storage.url() + "/" + conf.getString(StorageCommonConfig.TOPICS_DIR_CONFIG)
+        + "/";
+    return WALFile.createWriter(conf, Writer.file(new Path(logFile)),
+                                Writer.appendIfExists(true), Writer.compactPrefix(prefix));
+  }
+
   @Override
   public void apply() throws ConnectException {
     try {
@@ -106,7 +182,11 @@ public class FSWAL implements WAL {
       if (reader == null) {
         reader = new WALFile.Reader(conf.getHadoopConfiguration(), Reader.file(new Path(logFile)));
       }
-      Map<WALEntry, WALEntry> entries = new HashMap<>();
+      if (tailRecovery) {
+        applyLastTransaction();
+        return;
+      }
+      Map<String, String> entries = new HashMap<>();
       WALEntry key = new WALEntry();
       WALEntry value = new WALEntry();
       while (reader.next(key, value)) {
@@ -114,17 +194,9 @@ public class FSWAL implements WAL {
         if (keyName.equals(beginMarker)) {
           entries.clear();
         } else if (keyName.equals(endMarker)) {
-          for (Map.Entry<WALEntry, WALEntry> entry: entries.entrySet()) {
-            String tempFile = entry.getKey().getName();
-            String committedFile = entry.getValue().getName();
-            if (!storage.exists(committedFile)) {
-              storage.commit(tempFile, committedFile);
-            }
-          }
+          storage.commit(entries);
         } else {
-          WALEntry mapKey = new WALEntry(key.getName());
-          WALEntry mapValue = new WALEntry(value.getName());
-          entries.put(mapKey, mapValue);
+          entries.put(keyName, value.getName());
         }
       }
     } catch (IOException e) {
@@ -134,6 +206,52 @@ public class FSWAL implements WAL {
     }
   }
 
+  /**
+   * Apply the last complete transaction of the log, read from windows of growing size at the end
+   * of the log. Reading can start at any sync mark, and a transaction is only complete if both
+   * its begin and end markers are read. The files of every earlier transaction were committed
+   * before the next transaction was appended, so there is nothing else to apply.
+   */
+  private void applyLastTransaction() throws IOException {
+    long length = reader.getLength();
+    long window = TAIL_WINDOW_BYTES;
+    while (true) {
+      long start = Math.max(0L, length - window);
+      reader.sync(start);
+      Map<String, String> transaction = readLastTransaction();
+      if (transaction != null) {
+        storage.commit(transaction);
+        return;
+      }
+      if (start == 0L) {
+        return;
+      }
+      log.debug("No complete transaction in the last {} bytes of {}", window, logFile);
+      window *= 4;
+    }
+  }
+
+  private Map<String, String> readLastTransaction() throws IOException {
+    Map<String, String> last = null;
+    Map<String, String> entries = null;
+    WALEntry key = new WALEntry();
+    WALEntry value = new WALEntry();
+    while (reader.next(key, value)) {
+      String keyName = key.getName();
+      if (keyName.equals(beginMarker)) {
+        entries = new HashMap<>();
+      } else if (keyName.equals(endMarker)) {
+        if (entries != null) {
+          last = entries;
+        }
+        entries = null;
+      } else if (entries != null) {
+        entries.put(keyName, value.getName());
+      }
+    }
+    return last;
+  }
+
   @Override
   public void truncate() throws ConnectException {
     try {
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+/**
+ * A WAL kept in a memory-mapped file on the local disk of the worker, so that appending a
+ * transaction is made durable by a local flush instead of an HDFS pipeline sync.
+ *
+ * <p>Each transaction is a single record holding its length, the CRC32 of its content, a sequence
+ * number and its entries. A record that was only partly written when the worker crashed fails its
+ * checksum and is ignored. Since the files of every transaction are committed before the next
+ * transaction is appended, only the last record has to be applied on recovery, and the log wraps
+ * around to its start once full, the sequence numbers telling the last record apart from the
+ * older ones.
+ *
+ * <p>Each transaction is also appended to the HDFS log of the topic partition in
+ * {@code logs.dir}, before it is written locally. It is only flushed to the HDFS pipeline, which
+ * is cheaper than syncing it, but enough for another worker to recover it with {@link FSWAL} if
+ * this worker is lost. Holding the lease on that log also fences the previous owner of the topic
+ * partition. The HDFS append stays on the commit path and is not made asynchronous: the files of
+ * a transaction are renamed right after it is appended, so a transaction that only this worker
+ * knows of could be left half committed for another worker to find. For the same reason,
+ * recovery replays the HDFS log, which may hold transactions of another worker, before the local
+ * one.
+ */
+public class LocalWAL implements TransactionalWAL {
+
+  private static final Logger log = LoggerFactory.getLogger(LocalWAL.class);
+  // The length and the checksum preceding each record
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final int INITIAL_CAPACITY = 1024 * 1024;
+
+  private final HdfsStorage storage;
+  private final FSWAL hdfsWal;
+  private final File file;
+  private FileChannel channel = null;
+  private FileLock lock = null;
+  private MappedByteBuffer buffer = null;
+  private int position = 0;
+  private long sequence = 0L;
+  private Map<String, String> lastTransaction = null;
+  private Map<String, String> pending = null;
+
+  public LocalWAL(String logsDir, TopicPartition topicPart, HdfsStorage storage) {
+    this.storage = storage;
+    hdfsWal = new FSWAL(logsDir, topicPart, storage);
+    String localDir = storage.conf().getString(HdfsSinkConnectorConfig.WAL_LOCAL_DIR_CONFIG);
+    file = new File(localDir, hdfsWal.getLogFile().replaceAll("[^A-Za-z0-9._-]", "_"));
+  }
+
+  @Override
+  public synchronized void acquireLease() throws ConnectException {
+    if (channel != null) {
+      return;
+    }
+    FileChannel newChannel = null;
+    try {
+      File dir = file.getParentFile();
+      if (!dir.mkdirs() && !dir.isDirectory()) {
+        throw new ConnectException("Cannot create local WAL directory " + dir);
+      }
+      newChannel = FileChannel.open(
+          file.toPath(),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.READ,
+          StandardOpenOption.WRITE
+      );
+      FileLock newLock;
+      try {
+        newLock = newChannel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        // Held by another task of this worker
+        newLock = null;
+      }
+      if (newLock == null) {
+        throw new ConnectException("Cannot acquire lock on local WAL " + file + ", will retry.");
+      }
+      channel = newChannel;
+      lock = newLock;
+      newChannel = null;
+      map(Math.max(INITIAL_CAPACITY, channel.size()));
+      read();
+      log.info("Successfully acquired lock for {}", file);
+    } catch (IOException e) {
+      throw new DataException("Error opening local WAL " + file, e);
+    } finally {
+      if (newChannel != null) {
+        try {
+          newChannel.close();
+        } catch (IOException e) {
+          log.warn("Error closing local WAL {}", file, e);
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void append(String tempFile, String committedFile) throws ConnectException {
+    if (tempFile.equals(beginMarker)) {
+      pending = new HashMap<>();
+    } else if (tempFile.equals(endMarker)) {
+      if (pending != null) {
+        appendTransaction(pending);
+      }
+      pending = null;
+    } else {
+      // Like in an HDFS log, entries are only applied once an end marker follows them
+      if (pending == null) {
+        pending = new HashMap<>();
+      }
+      pending.put(tempFile, committedFile);
+    }
+  }
+
+  @Override
+  public synchronized void appendTransaction(Map<String, String> files) throws ConnectException {
+    acquireLease();
+    hdfsWal.appendTransaction(files, false);
+    byte[] content = encode(sequence + 1, files);
+    // Leave room for the zero length that ends the log after the record
+    int size = RECORD_HEADER_SIZE + content.length + 4;
+    int start = position;
+    if (start + size > buffer.capacity()) {
+      start = 0;
+      if (size > buffer.capacity()) {
+        map(Math.max(2L * buffer.capacity(), size));
+      }
+    }
+    CRC32 crc = new CRC32();
+    crc.update(content, 0, content.length);
+    ByteBuffer record = buffer.duplicate();
+    record.position(start + RECORD_HEADER_SIZE);
+    record.put(content);
+    buffer.putInt(start + RECORD_HEADER_SIZE + content.length, 0);
+    buffer.putInt(start + 4, (int) crc.getValue());
+    buffer.putInt(start, content.length);
+    buffer.force();
+    sequence++;
+    position = start + RECORD_HEADER_SIZE + content.length;
+    lastTransaction = new HashMap<>(files);
+  }
+
+  @Override
+  public synchronized void apply() throws ConnectException {
+    // The HDFS log was written by this worker or another one, or by the hdfs backend
+    hdfsWal.apply();
+    if (!file.exists()) {
+      return;
+    }
+    acquireLease();
+    if (lastTransaction != null) {
+      storage.commit(lastTransaction);
+    }
+  }
+
+  @Override
+  public synchronized void truncate() throws ConnectException {
+    try {
+      if (storage.exists(hdfsWal.getLogFile())) {
+        hdfsWal.truncate();
+      }
+      if (!file.exists()) {
+        return;
+      }
+      acquireLease();
+      buffer.putInt(0, 0);
+      buffer.force();
+      position = 0;
+      lastTransaction = null;
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws ConnectException {
+    pending = null;
+    hdfsWal.close();
+    if (channel == null) {
+      return;
+    }
+    try {
+      lock.release();
+      channel.close();
+    } catch (IOException e) {
+      throw new DataException("Error closing " + file, e);
+    } finally {
+      channel = null;
+      lock = null;
+      buffer = null;
+      position = 0;
+      sequence = 0L;
+      lastTransaction = null;
+    }
+  }
+
+  @Override
+  public String getLogFile() {
+    return file.getPath();
+  }
+
+  private void map(long capacity) {
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    } catch (IOException e) {
+      throw new DataException("Error mapping local WAL " + file, e);
+    }
+  }
+
+  /**
+   * Find the record with the highest sequence number among the valid records at the start of the
+   * log, and continue the log after it.
+   */
+  private void read() {
+    CRC32 crc = new CRC32();
+    int start = 0;
+    while (start + RECORD_HEADER_SIZE <= buffer.capacity()) {
+      int length = buffer.getInt(start);
+      if (length <= 0 || length > buffer.capacity() - start - RECORD_HEADER_SIZE) {
+        break;
+      }
+      ByteBuffer content = buffer.duplicate();
+      content.position(start + RECORD_HEADER_SIZE);
+      content.limit(start + RECORD_HEADER_SIZE + length);
+      content = content.slice();
+      crc.reset();
+      crc.update(content.duplicate());
+      if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+        log.warn("Ignoring the end of local WAL {} from a corrupt record at {}", file, start);
+        break;
+      }
+      long recordSequence = content.getLong(0);
+      if (recordSequence > sequence) {
+        sequence = recordSequence;
+        lastTransaction = decode(content);
+        position = start + RECORD_HEADER_SIZE + length;
+      }
+      start += RECORD_HEADER_SIZE + length;
+    }
+  }
+
+  private static byte[] encode(long sequence, Map<String, String> files) {
+    List<byte[]> names = new ArrayList<>(2 * files.size());
+    int size = 8 + 4;
+    for (Map.Entry<String, String> entry : files.entrySet()) {
+      byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+      names.add(key);
+      names.add(value);
+      size += 4 + key.length + 4 + value.length;
+    }
+    ByteBuffer content = ByteBuffer.allocate(size);
+    content.putLong(sequence);
+    content.putInt(files.size());
+    for (byte[] name : names) {
+      content.putInt(name.length);
+      content.put(name);
+    }
+    return content.array();
+  }
+
+  private static Map<String, String> decode(ByteBuffer content) {
+    content.position(8);
+    int count = content.getInt();
+    Map<String, String> files = new HashMap<>();
+    for (int i = 0; i < count; ++i) {
+      String key = decodeString(content);
+      files.put(key, decodeString(content));
+    }
+    return files;
+  }
+
+  private static String decodeString(ByteBuffer content) {
+    byte[] bytes = new byte[content.getInt()];
+    content.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
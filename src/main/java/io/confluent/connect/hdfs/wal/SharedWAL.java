@@ -0,0 +1,608 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.apache.kafka.connect.errors.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import io.confluent.connect.hdfs.FileUtils;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+/**
+ * A WAL shared by all the topic partitions of a task, which holds a single lease instead of one
+ * per topic partition. Entries are tagged with their topic partition and appended to the log of
+ * the task, in a directory of its own under the {@value #SHARED_DIRECTORY} directory of the logs
+ * directory.
+ *
+ * <p>A topic partition may have been written by other tasks before it was assigned to this one,
+ * so recovery applies the last complete transaction of the topic partition found in the log of
+ * every task. Applying a transaction whose files are committed already does nothing. Truncating
+ * appends a marker, after which the earlier entries of the topic partition in the log of this
+ * task are ignored.
+ *
+ * <p>As the log of a task is not leased per topic partition, recovery claims the next epoch of
+ * the topic partition instead, by atomically creating a file named after it in the
+ * {@value #EPOCH_DIRECTORY} directory of the log directory of the topic partition. Every entry is
+ * tagged with the epoch of its task, and once recovered, truncating records the epoch as
+ * truncated there as well. Recovery only applies transactions from the epochs between the last
+ * truncated one and its own, so neither the transactions applied by an earlier recovery, nor the
+ * ones appended by a task after the topic partition was taken from it, are applied again from
+ * the log of any task. A task the topic partition was taken from is not stopped from committing
+ * the files of a transaction it is appending concurrently, which the new owner then finds
+ * committed already.
+ *
+ * <p>Once the log of the task grows past {@link #ROLL_SIZE_BYTES}, a new log is started with the
+ * transactions whose files are not all committed yet, and the previous one is deleted. The log
+ * of a task that stopped is deleted by any task that recovers, once its lease is released and
+ * the files of all its transactions are committed.
+ */
+public class SharedWAL {
+  public static final String SHARED_DIRECTORY = "+shared";
+  public static final String EPOCH_DIRECTORY = "+epoch";
+
+  private static final Logger log = LoggerFactory.getLogger(SharedWAL.class);
+  private static final String LOG_FILE = "log";
+  private static final String TRUNCATE_MARKER = "TRUNCATE";
+  private static final String TRUNCATED_SUFFIX = ".truncated";
+  private static final long ROLL_SIZE_BYTES = 16 * 1024 * 1024L;
+
+  private final HdfsStorage storage;
+  private final HdfsSinkConnectorConfig conf;
+  private final String logsDir;
+  private final String sharedDir;
+  private String logId;
+  private WALFile.Writer writer;
+  // The last transaction appended to this log by topic partition, until truncated
+  private final Map<TopicPartition, Transaction> transactions;
+  // The transactions to apply from the logs of all tasks, read once for the topic partitions
+  // assigned since they were last read. Guarded by recoveryLock instead of the WAL, so that
+  // reading the logs and committing files do not hold up the other topic partitions.
+  private final Object recoveryLock;
+  private Map<TopicPartition, List<Transaction>> recoverable;
+  private long recoverableVersion;
+  private long partitionVersion;
+
+  public SharedWAL(String logsDir, HdfsStorage storage) {
+    this.storage = storage;
+    this.conf = storage.conf();
+    this.logsDir = logsDir;
+    sharedDir = FileUtils.directoryName(storage.url(), logsDir, SHARED_DIRECTORY);
+    logId = UUID.randomUUID().toString();
+    transactions = new HashMap<>();
+    recoveryLock = new Object();
+    recoverableVersion = -1L;
+    partitionVersion = 0L;
+  }
+
+  /**
+   * Get the WAL of a topic partition of the task.
+   */
+  public synchronized WAL forPartition(TopicPartition tp) {
+    return new PartitionWAL(tp, ++partitionVersion);
+  }
+
+  public synchronized String getLogFile() {
+    return logFile(logId);
+  }
+
+  synchronized void acquireLease() {
+    if (writer != null) {
+      return;
+    }
+    // No other task writes to the log of this task, so there is no lease to wait for
+    try {
+      writer = FSWAL.createWriter(storage, getLogFile());
+      log.info("Successfully acquired lease for {}", getLogFile());
+    } catch (IOException e) {
+      throw new DataException("Error creating writer for log file " + getLogFile(), e);
+    }
+  }
+
+  synchronized void append(TopicPartition tp, long epoch, String tempFile, String committedFile) {
+    acquireLease();
+    try {
+      appendEntry(tp, epoch, tempFile, committedFile);
+      writer.hsync();
+    } catch (IOException e) {
+      log.error("Error appending WAL file: {}, {}", getLogFile(), e);
+      close();
+      throw new DataException(e);
+    }
+    if (WAL.beginMarker.equals(tempFile)) {
+      transactions.put(tp, new Transaction(epoch, new HashMap<String, String>()));
+    } else if (!WAL.endMarker.equals(tempFile) && transactions.containsKey(tp)) {
+      transactions.get(tp).files.put(tempFile, committedFile);
+    }
+    maybeRoll();
+  }
+
+  synchronized void appendTransaction(TopicPartition tp, long epoch, Map<String, String> files) {
+    acquireLease();
+    Transaction transaction = new Transaction(epoch, new HashMap<>(files));
+    try {
+      appendTransactionEntries(tp, transaction);
+      writer.hsync();
+    } catch (IOException e) {
+      log.error("Error appending WAL file: {}, {}", getLogFile(), e);
+      close();
+      throw new DataException(e);
+    }
+    transactions.put(tp, transaction);
+    maybeRoll();
+  }
+
+  /**
+   * Apply the transactions of a topic partition that may not be committed yet.
+   *
+   * @return the epoch claimed by this task for the topic partition.
+   */
+  long apply(TopicPartition tp, long version) {
+    // Fence the previous owners before reading what they may still be writing
+    Claim claim = claim(tp);
+
+    // Transactions appended to the log of the topic partition before it was shared
+    FSWAL partitionLog = new FSWAL(logsDir, tp, storage);
+    if (storage.exists(partitionLog.getLogFile())) {
+      partitionLog.apply();
+      partitionLog.truncate();
+    }
+
+    List<Transaction> found;
+    synchronized (recoveryLock) {
+      if (recoverable == null || recoverableVersion < version) {
+        long readVersion = partitionVersion();
+        readLogs(currentLogId());
+        recoverableVersion = readVersion;
+      }
+      found = recoverable.get(tp);
+    }
+    if (found == null) {
+      return claim.epoch;
+    }
+    for (Transaction transaction : found) {
+      if (transaction.epoch >= claim.truncatedEpoch && transaction.epoch < claim.epoch) {
+        storage.commit(transaction.files);
+      } else {
+        log.info("Skipping transaction of {} from epoch {}", tp, transaction.epoch);
+      }
+    }
+    // Only once committed, so that a failed recovery applies the same transactions again
+    synchronized (recoveryLock) {
+      if (recoverable.get(tp) == found) {
+        recoverable.remove(tp);
+      }
+    }
+    return claim.epoch;
+  }
+
+  /**
+   * Claim the next epoch of a topic partition, which fences the tasks that owned it before. The
+   * epoch file is created atomically, so two tasks never claim the same epoch.
+   */
+  private Claim claim(TopicPartition tp) {
+    Path directory = new Path(epochDirectory(tp));
+    try {
+      FileSystem fs = directory.getFileSystem(conf.getHadoopConfiguration());
+      while (true) {
+        long claimedEpoch = 0L;
+        long truncatedEpoch = 0L;
+        if (fs.exists(directory)) {
+          for (FileStatus status : fs.listStatus(directory)) {
+            String name = status.getPath().getName();
+            if (name.endsWith(TRUNCATED_SUFFIX)) {
+              truncatedEpoch = Math.max(truncatedEpoch, epochOf(name));
+            } else {
+              claimedEpoch = Math.max(claimedEpoch, epochOf(name));
+            }
+          }
+        }
+        long epoch = claimedEpoch + 1;
+        // Fails if another task claimed the same epoch since the directory was listed
+        if (fs.createNewFile(new Path(directory, Long.toString(epoch)))) {
+          log.info("Claimed epoch {} of {}", epoch, tp);
+          return new Claim(epoch, truncatedEpoch);
+        }
+      }
+    } catch (IOException e) {
+      throw new ConnectException("Error claiming an epoch of " + tp, e);
+    }
+  }
+
+  void truncate(TopicPartition tp, long epoch) {
+    synchronized (this) {
+      acquireLease();
+      try {
+        writer.append(tagged(tp, epoch, TRUNCATE_MARKER), new WALEntry(""));
+        writer.hsync();
+      } catch (IOException e) {
+        log.error("Error appending WAL file: {}, {}", getLogFile(), e);
+        close();
+        throw new DataException(e);
+      }
+      transactions.remove(tp);
+    }
+
+    // The transactions of earlier epochs are applied, in the log of any task
+    Path directory = new Path(epochDirectory(tp));
+    try {
+      FileSystem fs = directory.getFileSystem(conf.getHadoopConfiguration());
+      fs.createNewFile(new Path(directory, epoch + TRUNCATED_SUFFIX));
+      for (FileStatus status : fs.listStatus(directory)) {
+        if (epochOf(status.getPath().getName()) < epoch) {
+          fs.delete(status.getPath(), false);
+        }
+      }
+    } catch (IOException e) {
+      throw new ConnectException("Error truncating epoch " + epoch + " of " + tp, e);
+    }
+  }
+
+  /**
+   * Close the log of the task, and delete it if the files of all its transactions are committed.
+   */
+  public synchronized void close() {
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+    } catch (IOException e) {
+      throw new DataException("Error closing " + getLogFile(), e);
+    } finally {
+      writer = null;
+    }
+  }
+
+  public synchronized void stop() {
+    close();
+    if (isCommitted(transactions.values())) {
+      storage.delete(logDirectory(logId));
+    }
+  }
+
+  private void appendEntry(TopicPartition tp, long epoch, String key, String value)
+      throws IOException {
+    writer.append(tagged(tp, epoch, key), new WALEntry(value));
+  }
+
+  private void appendTransactionEntries(TopicPartition tp, Transaction transaction)
+      throws IOException {
+    appendEntry(tp, transaction.epoch, WAL.beginMarker, "");
+    for (Map.Entry<String, String> entry : transaction.files.entrySet()) {
+      appendEntry(tp, transaction.epoch, entry.getKey(), entry.getValue());
+    }
+    appendEntry(tp, transaction.epoch, WAL.endMarker, "");
+  }
+
+  /**
+   * Start a new log once this one is large enough, with the transactions that may still have
+   * files to commit, and delete this one.
+   */
+  private void maybeRoll() {
+    try {
+      if (writer.getLength() < ROLL_SIZE_BYTES) {
+        return;
+      }
+    } catch (IOException e) {
+      throw new DataException(e);
+    }
+
+    String previousLogId = logId;
+    close();
+    logId = UUID.randomUUID().toString();
+    acquireLease();
+    try {
+      for (Map.Entry<TopicPartition, Transaction> entry : transactions.entrySet()) {
+        if (!isCommitted(entry.getValue().files)) {
+          appendTransactionEntries(entry.getKey(), entry.getValue());
+        }
+      }
+      writer.hsync();
+    } catch (IOException e) {
+      // Both logs are kept, and recovery applies the transactions of either
+      log.error("Error rolling WAL file: {}, {}", getLogFile(), e);
+      close();
+      throw new DataException(e);
+    }
+    storage.delete(logDirectory(previousLogId));
+    log.info("Rolled WAL file {} to {}", logFile(previousLogId), getLogFile());
+  }
+
+  private synchronized long partitionVersion() {
+    return partitionVersion;
+  }
+
+  private synchronized String currentLogId() {
+    return logId;
+  }
+
+  /**
+   * Read the last complete transaction of every topic partition from the log of every task, and
+   * delete the logs of stopped tasks whose transactions are all applied.
+   */
+  private void readLogs(String currentLogId) {
+    recoverable = new HashMap<>();
+    if (!storage.exists(sharedDir)) {
+      return;
+    }
+    for (FileStatus status : storage.list(sharedDir)) {
+      String id = status.getPath().getName();
+      Path logPath = new Path(logFile(id));
+      Map<TopicPartition, Transaction> logTransactions = read(logPath);
+      if (!id.equals(currentLogId) && isClosed(logPath) && isApplied(logTransactions)) {
+        log.info("Deleting WAL file {} of a stopped task", logPath);
+        storage.delete(logDirectory(id));
+        continue;
+      }
+      for (Map.Entry<TopicPartition, Transaction> entry : logTransactions.entrySet()) {
+        List<Transaction> found = recoverable.get(entry.getKey());
+        if (found == null) {
+          found = new ArrayList<>();
+          recoverable.put(entry.getKey(), found);
+        }
+        found.add(entry.getValue());
+      }
+    }
+  }
+
+  private Map<TopicPartition, Transaction> read(Path logPath) {
+    Map<TopicPartition, Transaction> complete = new HashMap<>();
+    Map<TopicPartition, Transaction> pending = new HashMap<>();
+    try {
+      FileSystem fs = logPath.getFileSystem(conf.getHadoopConfiguration());
+      if (!fs.exists(logPath)) {
+        return complete;
+      }
+      // The length known to the name node may not include the entries synced by a writer that
+      // still holds the lease
+      FSDataInputStream in = fs.open(logPath);
+      long length = in instanceof HdfsDataInputStream
+                    ? ((HdfsDataInputStream) in).getVisibleLength()
+                    : fs.getFileStatus(logPath).getLen();
+      WALFile.Reader reader = new WALFile.Reader(
+          conf.getHadoopConfiguration(),
+          WALFile.Reader.stream(in),
+          WALFile.Reader.length(length)
+      );
+      try {
+        WALEntry key = new WALEntry();
+        WALEntry value = new WALEntry();
+        while (reader.next(key, value)) {
+          String name = key.getName();
+          int separator = name.indexOf(' ');
+          int epochSeparator = name.indexOf(' ', separator + 1);
+          TopicPartition tp = topicPartition(name.substring(0, separator));
+          long epoch = Long.parseLong(name.substring(separator + 1, epochSeparator));
+          String entry = name.substring(epochSeparator + 1);
+          if (entry.equals(TRUNCATE_MARKER)) {
+            complete.remove(tp);
+            pending.remove(tp);
+          } else if (entry.equals(WAL.beginMarker)) {
+            pending.put(tp, new Transaction(epoch, new HashMap<String, String>()));
+          } else if (entry.equals(WAL.endMarker)) {
+            if (pending.containsKey(tp)) {
+              complete.put(tp, pending.remove(tp));
+            }
+          } else if (pending.containsKey(tp)) {
+            pending.get(tp).files.put(entry, value.getName());
+          }
+        }
+      } catch (EOFException e) {
+        // The last entry was not completely written by a task that stopped
+        log.debug("Reached the end of WAL file {} in an entry", logPath);
+      } finally {
+        reader.close();
+      }
+    } catch (EOFException e) {
+      // The log was created, but its header was not written yet
+      log.debug("WAL file {} has no entries", logPath);
+    } catch (IOException e) {
+      throw new ConnectException("Error reading WAL file " + logPath, e);
+    }
+    return complete;
+  }
+
+  private boolean isClosed(Path logPath) {
+    try {
+      FileSystem fs = logPath.getFileSystem(conf.getHadoopConfiguration());
+      return fs instanceof DistributedFileSystem
+          && (!fs.exists(logPath) || ((DistributedFileSystem) fs).isFileClosed(logPath));
+    } catch (IOException e) {
+      throw new ConnectException(e);
+    }
+  }
+
+  /**
+   * Whether the transactions of a log are committed, or were superseded by a later recovery of
+   * their topic partition.
+   */
+  private boolean isApplied(Map<TopicPartition, Transaction> logTransactions) {
+    for (Map.Entry<TopicPartition, Transaction> entry : logTransactions.entrySet()) {
+      if (!isCommitted(entry.getValue().files)
+          && entry.getValue().epoch >= truncatedEpoch(entry.getKey())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long truncatedEpoch(TopicPartition tp) {
+    Path directory = new Path(epochDirectory(tp));
+    long truncatedEpoch = 0L;
+    try {
+      FileSystem fs = directory.getFileSystem(conf.getHadoopConfiguration());
+      if (fs.exists(directory)) {
+        for (FileStatus status : fs.listStatus(directory)) {
+          String name = status.getPath().getName();
+          if (name.endsWith(TRUNCATED_SUFFIX)) {
+            truncatedEpoch = Math.max(truncatedEpoch, epochOf(name));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new ConnectException("Error reading the epochs of " + tp, e);
+    }
+    return truncatedEpoch;
+  }
+
+  private boolean isCommitted(Iterable<Transaction> transactions) {
+    for (Transaction transaction : transactions) {
+      if (!isCommitted(transaction.files)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isCommitted(Map<String, String> files) {
+    for (String committedFile : files.values()) {
+      if (!storage.exists(committedFile)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String epochDirectory(TopicPartition tp) {
+    return FileUtils.directoryName(storage.url(), logsDir, tp) + "/" + EPOCH_DIRECTORY;
+  }
+
+  private String logDirectory(String id) {
+    return sharedDir + "/" + id;
+  }
+
+  private String logFile(String id) {
+    return logDirectory(id) + "/" + LOG_FILE;
+  }
+
+  private static WALEntry tagged(TopicPartition tp, long epoch, String name) {
+    return new WALEntry(tp.topic() + "-" + tp.partition() + " " + epoch + " " + name);
+  }
+
+  private static long epochOf(String fileName) {
+    return Long.parseLong(
+        fileName.endsWith(TRUNCATED_SUFFIX)
+        ? fileName.substring(0, fileName.length() - TRUNCATED_SUFFIX.length())
+        : fileName
+    );
+  }
+
+  private static TopicPartition topicPartition(String tag) {
+    int separator = tag.lastIndexOf('-');
+    return new TopicPartition(
+        tag.substring(0, separator),
+        Integer.parseInt(tag.substring(separator + 1))
+    );
+  }
+
+  /**
+   * The files of a transaction, and the epoch of the topic partition it was appended in.
+   */
+  private static class Transaction {
+    private final long epoch;
+    private final Map<String, String> files;
+
+    Transaction(long epoch, Map<String, String> files) {
+      this.epoch = epoch;
+      this.files = files;
+    }
+  }
+
+  private static class Claim {
+    private final long epoch;
+    private final long truncatedEpoch;
+
+    Claim(long epoch, long truncatedEpoch) {
+      this.epoch = epoch;
+      this.truncatedEpoch = truncatedEpoch;
+    }
+  }
+
+  /**
+   * The WAL of a topic partition, backed by the shared log of the task.
+   */
+  private class PartitionWAL implements TransactionalWAL {
+    private final TopicPartition tp;
+    private final long version;
+    // The epoch claimed by the last recovery of the topic partition
+    private volatile long epoch;
+
+    PartitionWAL(TopicPartition tp, long version) {
+      this.tp = tp;
+      this.version = version;
+      this.epoch = -1L;
+    }
+
+    @Override
+    public void acquireLease() throws ConnectException {
+      SharedWAL.this.acquireLease();
+    }
+
+    @Override
+    public void append(String tempFile, String committedFile) throws ConnectException {
+      SharedWAL.this.append(tp, epoch(), tempFile, committedFile);
+    }
+
+    @Override
+    public void appendTransaction(Map<String, String> files) throws ConnectException {
+      SharedWAL.this.appendTransaction(tp, epoch(), files);
+    }
+
+    @Override
+    public void apply() throws ConnectException {
+      epoch = SharedWAL.this.apply(tp, version);
+    }
+
+    @Override
+    public void truncate() throws ConnectException {
+      SharedWAL.this.truncate(tp, epoch());
+    }
+
+    private long epoch() {
+      if (epoch < 0) {
+        throw new ConnectException("The WAL of " + tp + " is used before it was applied");
+      }
+      return epoch;
+    }
+
+    @Override
+    public void close() throws ConnectException {
+      // The shared log stays open for the other topic partitions of the task
+    }
+
+    @Override
+    public String getLogFile() {
+      return SharedWAL.this.getLogFile();
+    }
+  }
+}
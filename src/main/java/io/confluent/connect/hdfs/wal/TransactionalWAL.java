@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.kafka.connect.errors.ConnectException;
+
+import java.util.Map;
+
+/**
+ * A WAL that appends the entries of a transaction, between a begin and an end marker, and makes
+ * them durable at once instead of one entry at a time.
+ */
+public interface TransactionalWAL extends WAL {
+  /**
+   * Append a begin marker, an entry from each temp file to its committed file, and an end marker.
+   * The transaction is durable when this method returns.
+   *
+   * @param files the committed file names by temp file name
+   */
+  void appendTransaction(Map<String, String> files) throws ConnectException;
+}
@@ -18,6 +18,4 @@ package io.confluent.connect.hdfs.wal;
 public class WALConstants {
   protected static final String LEASE_EXCEPTION_CLASS_NAME
       = "org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException";
-  protected static final long MAX_SLEEP_INTERVAL_MS = 16000L;
-  protected static final long INITIAL_SLEEP_INTERVAL_MS = 1000L;
 }
@@ -16,14 +16,22 @@ package io.confluent.connect.hdfs.wal;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 public class WALEntry implements Writable {
 
+  // Types of the names of entries in the compact format
+  private static final byte FULL_NAME = 0;
+  private static final byte PREFIXED_NAME = 1;
+
   private String name;
+  // Decoding buffer, reused by the entries the readers fill in
+  private byte[] buffer;
 
   public WALEntry(String name) {
     this.name = name;
@@ -47,4 +55,36 @@ public class WALEntry implements Writable {
     Text.writeString(out, name);
   }
 
+  /**
+   * Write the name in the compact format, relative to the given prefix if it starts with it.
+   */
+  void writeCompact(DataOutput out, String prefix) throws IOException {
+    boolean prefixed = !prefix.isEmpty() && name.startsWith(prefix);
+    byte[] bytes = (prefixed ? name.substring(prefix.length()) : name)
+        .getBytes(StandardCharsets.UTF_8);
+    out.writeByte(prefixed ? PREFIXED_NAME : FULL_NAME);
+    WritableUtils.writeVInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a name written in the compact format with the given prefix.
+   */
+  void readCompact(DataInput in, String prefix) throws IOException {
+    byte type = in.readByte();
+    if (type != FULL_NAME && type != PREFIXED_NAME) {
+      throw new IOException("Unknown WAL entry type " + type);
+    }
+    int length = WritableUtils.readVInt(in);
+    if (length < 0) {
+      throw new IOException("Negative WAL entry length " + length);
+    }
+    if (buffer == null || buffer.length < length) {
+      buffer = new byte[Math.max(length, 256)];
+    }
+    in.readFully(buffer, 0, length);
+    String suffix = new String(buffer, 0, length, StandardCharsets.UTF_8);
+    name = type == PREFIXED_NAME ? prefix.concat(suffix) : suffix;
+  }
+
 }
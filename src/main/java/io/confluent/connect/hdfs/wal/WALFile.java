@@ -30,6 +30,7 @@ import org.apache.hadoop.fs.Syncable;
 import org.apache.hadoop.io.DataInputBuffer;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.VersionMismatchException;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.serializer.Deserializer;
@@ -53,6 +54,8 @@ public class WALFile {
 
   private static final Log log = LogFactory.getLog(WALFile.class);
   private static final byte INITIAL_VERSION = (byte) 0;
+  // Entries store file names relative to a prefix written once in the header
+  private static final byte COMPACT_VERSION = (byte) 1;
   private static final int SYNC_ESCAPE = -1;      // "length" of sync entries
   private static final int SYNC_HASH_SIZE = 16;   // number of bytes in hash
   private static final int SYNC_SIZE = 4 + SYNC_HASH_SIZE; // escape + hash
@@ -96,6 +99,7 @@ public class WALFile {
     private FSDataOutputStream out;
     private DataOutputBuffer buffer = new DataOutputBuffer();
     private boolean appendMode;
+    private String prefix;
 
     {
       try {
@@ -121,6 +125,7 @@ public class WALFile {
       AppendIfExistsOption appendIfExistsOption = Options.getOption(
           AppendIfExistsOption.class, opts);
       StreamOption streamOption = Options.getOption(StreamOption.class, opts);
+      CompactPrefixOption compactPrefixOption = Options.getOption(CompactPrefixOption.class, opts);
 
       // check consistency of options
       if ((fileOption == null) == (streamOption == null)) {
@@ -163,18 +168,22 @@ public class WALFile {
                 WALFile.Reader.file(p),
                 new Reader.OnlyHeaderOption()
             )) {
-              if (reader.getVersion() != VERSION[3]) {
-                throw new VersionMismatchException(VERSION[3], reader.getVersion());
+              if (reader.getVersion() > COMPACT_VERSION) {
+                throw new VersionMismatchException(COMPACT_VERSION, reader.getVersion());
               }
               sync = reader.getSync();
+              // Entries are appended in the format of the file
+              prefix = reader.getPrefix();
             }
             out = fs.append(p, bufferSize);
             this.appendMode = true;
           } else {
             out = fs.create(p, true, bufferSize, replication, blockSize);
+            prefix = compactPrefixOption == null ? null : compactPrefixOption.getValue();
           }
         } else {
           out = streamOption.getValue();
+          prefix = compactPrefixOption == null ? null : compactPrefixOption.getValue();
         }
 
         init(connectorConfig, out, ownStream);
@@ -226,6 +235,14 @@ public class WALFile {
       return new BlockSizeOption(value);
     }
 
+    /**
+     * Create an option to write new files in the compact format, where the file names starting
+     * with the given prefix are stored relative to it.
+     */
+    public static Option compactPrefix(String value) {
+      return new CompactPrefixOption(value);
+    }
+
     void init(HdfsSinkConnectorConfig connectorConfig, FSDataOutputStream out, boolean ownStream)
         throws IOException {
       Configuration conf = connectorConfig.getHadoopConfiguration();
@@ -266,13 +283,21 @@ public class WALFile {
       buffer.reset();
 
       // Append the 'key'
-      keySerializer.serialize(key);
+      if (prefix != null) {
+        key.writeCompact(buffer, prefix);
+      } else {
+        keySerializer.serialize(key);
+      }
       int keyLength = buffer.getLength();
       if (keyLength < 0) {
         throw new IOException("negative length keys not allowed: " + key);
       }
 
-      valSerializer.serialize(val);
+      if (prefix != null) {
+        val.writeCompact(buffer, prefix);
+      } else {
+        valSerializer.serialize(val);
+      }
 
       // Write the record out
       checkAndWriteSync();                                // sync
@@ -303,8 +328,15 @@ public class WALFile {
 
     private void writeFileHeader()
         throws IOException {
-      out.write(VERSION);                    // write the version
-      out.write(sync);                       // write the sync bytes
+      if (prefix != null) {
+        out.write(VERSION, 0, VERSION.length - 1);
+        out.write(COMPACT_VERSION);          // write the version
+        out.write(sync);                     // write the sync bytes
+        Text.writeString(out, prefix);       // write the prefix of file names
+      } else {
+        out.write(VERSION);                  // write the version
+        out.write(sync);                     // write the sync bytes
+      }
       out.flush();                           // flush header
     }
 
@@ -395,6 +427,12 @@ public class WALFile {
         super(value);
       }
     }
+
+    static class CompactPrefixOption extends Options.StringOption implements Option {
+      CompactPrefixOption(String value) {
+        super(value);
+      }
+    }
   }
 
   public static class Reader implements java.io.Closeable {
@@ -404,6 +442,7 @@ public class WALFile {
     private DataOutputBuffer outBuf = new DataOutputBuffer();
 
     private byte version;
+    private String prefix;
     private byte[] sync = new byte[SYNC_HASH_SIZE];
     private byte[] syncCheck = new byte[SYNC_HASH_SIZE];
     private boolean syncSeen;
@@ -587,11 +626,14 @@ public class WALFile {
 
       // Set 'version'
       version = versionBlock[3];
-      if (version > VERSION[3]) {
-        throw new VersionMismatchException(VERSION[3], version);
+      if (version > COMPACT_VERSION) {
+        throw new VersionMismatchException(COMPACT_VERSION, version);
       }
 
       in.readFully(sync);                       // read sync bytes
+      if (version >= COMPACT_VERSION) {
+        prefix = Text.readString(in);           // read the prefix of file names
+      }
       headerEnd = in.getPos();                  // record end of header
 
       // Initialize... *not* if this we are constructing a temporary Reader
@@ -638,6 +680,10 @@ public class WALFile {
       return sync;
     }
 
+    private String getPrefix() {
+      return prefix;
+    }
+
     /**
      * Close the file.
      */
@@ -685,7 +731,11 @@ public class WALFile {
       // Position stream to 'current' value
       seekToCurrentValue();
 
-      val.readFields(valIn);
+      if (prefix != null) {
+        ((WALEntry) val).readCompact(valIn, prefix);
+      } else {
+        val.readFields(valIn);
+      }
       if (valIn.read() > 0) {
         log.info("available bytes: " + valIn.available());
         throw new IOException(
@@ -727,6 +777,11 @@ public class WALFile {
     }
 
     private WALEntry deserializeValue(WALEntry val) throws IOException {
+      if (prefix != null) {
+        WALEntry entry = val != null ? val : new WALEntry();
+        entry.readCompact(valIn, prefix);
+        return entry;
+      }
       return valDeserializer.deserialize(val);
     }
 
@@ -779,7 +834,11 @@ public class WALFile {
 
       valBuffer.reset(outBuf.getData(), outBuf.getLength());
 
-      key.readFields(valBuffer);
+      if (prefix != null) {
+        ((WALEntry) key).readCompact(valBuffer, prefix);
+      } else {
+        key.readFields(valBuffer);
+      }
       valBuffer.mark(0);
       if (valBuffer.getPosition() != keyLength) {
         throw new IOException(key + " read " + valBuffer.getPosition()
@@ -847,6 +906,11 @@ public class WALFile {
     }
 
     private WALEntry deserializeKey(WALEntry key) throws IOException {
+      if (prefix != null) {
+        WALEntry entry = key != null ? key : new WALEntry();
+        entry.readCompact(valBuffer, prefix);
+        return entry;
+      }
       return keyDeserializer.deserialize(key);
     }
 
@@ -916,6 +980,13 @@ public class WALFile {
       }
     }
 
+    /**
+     * Returns the position of the end of the input file.
+     */
+    public synchronized long getLength() {
+      return end;
+    }
+
     /**
      * Returns true iff the previous call to next passed a sync mark.
      */
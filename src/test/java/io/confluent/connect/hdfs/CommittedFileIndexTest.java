@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CommittedFileIndexTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testIndexKeepsUpWithCommits() throws Exception {
+    setUp();
+    TopicPartition other = new TopicPartition(TOPIC, PARTITION + 1);
+    Path dir1 = new Path(FileUtils.topicDirectory(url, topicsDir, TOPIC), "dt=1");
+    Path dir2 = new Path(FileUtils.topicDirectory(url, topicsDir, TOPIC), "dt=2");
+    fs.mkdirs(dir1);
+    fs.mkdirs(dir2);
+    fs.createNewFile(committedFile(dir1, TOPIC_PARTITION, 0, 9));
+    fs.createNewFile(committedFile(dir1, TOPIC_PARTITION, 10, 19));
+    fs.createNewFile(committedFile(dir2, other, 0, 29));
+
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    CommittedFileIndex index = storage.committedFiles();
+    assertEquals(19, offsetOf(index.fileWithMaxOffset(TOPIC_PARTITION)));
+    assertEquals(29, offsetOf(index.fileWithMaxOffset(other)));
+    assertEquals(29, offsetOf(index.fileWithMaxOffset(TOPIC)));
+    assertEquals(2, index.getDirectories(TOPIC).size());
+    assertNull(index.fileWithMaxOffset(new TopicPartition(TOPIC, PARTITION + 2)));
+
+    // Files committed through the storage are added without listing the topic again
+    Path dir3 = new Path(FileUtils.topicDirectory(url, topicsDir, TOPIC), "dt=3");
+    fs.mkdirs(dir3);
+    Path tempFile = new Path(url + "/" + topicsDir + "/+tmp/" + TOPIC + "/temp.avro");
+    fs.mkdirs(tempFile.getParent());
+    fs.createNewFile(tempFile);
+    storage.commit(tempFile.toString(), committedFile(dir3, TOPIC_PARTITION, 20, 39).toString());
+    assertEquals(39, offsetOf(index.fileWithMaxOffset(TOPIC_PARTITION)));
+    assertEquals(39, offsetOf(index.fileWithMaxOffset(TOPIC)));
+    assertEquals(3, index.getDirectories(TOPIC).size());
+
+    // Files committed by others are only seen once the index is cleared
+    fs.createNewFile(committedFile(dir2, other, 30, 49));
+    assertEquals(29, offsetOf(index.fileWithMaxOffset(other)));
+    index.clear();
+    assertEquals(49, offsetOf(index.fileWithMaxOffset(other)));
+    storage.close();
+  }
+
+  private static Path committedFile(Path dir, TopicPartition tp, long startOffset, long endOffset) {
+    return new Path(
+        dir,
+        tp.topic() + "+" + tp.partition() + "+" + startOffset + "+" + endOffset + ".avro"
+    );
+  }
+
+  private static long offsetOf(Path path) {
+    return FileUtils.extractOffset(path.getName());
+  }
+}
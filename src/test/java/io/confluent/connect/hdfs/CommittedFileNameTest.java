@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommittedFileNameTest {
+
+  @Test
+  public void testParse() {
+    String name = "my-topic.v1+12+0000000100+0000000199.avro";
+    assertTrue(CommittedFileName.isCommittedFile(name));
+    assertTrue(CommittedFileName.isCommittedFile(name, "my-topic.v1"));
+    assertTrue(CommittedFileName.isCommittedFile(name, "my-topic.v1", 12));
+    assertFalse(CommittedFileName.isCommittedFile(name, "my-topic"));
+    assertFalse(CommittedFileName.isCommittedFile(name, "my-topic.v1", 1));
+    assertEquals("my-topic.v1", CommittedFileName.topic(name));
+    assertEquals(12, CommittedFileName.partition(name));
+    assertEquals(100, CommittedFileName.startOffset(name));
+    assertEquals(199, CommittedFileName.endOffset(name));
+    assertEquals(199, CommittedFileName.endOffset("my-topic.v1+12+100+199"));
+  }
+
+  @Test
+  public void testNotCommittedFile() {
+    assertFalse(CommittedFileName.isCommittedFile("log"));
+    assertFalse(CommittedFileName.isCommittedFile("+0+1+2.avro"));
+    assertFalse(CommittedFileName.isCommittedFile("topic+0+1.avro"));
+    assertFalse(CommittedFileName.isCommittedFile("topic+0+1+.avro"));
+    assertFalse(CommittedFileName.isCommittedFile("topic+0+1+2.avro.crc"));
+    assertFalse(CommittedFileName.isCommittedFile("topic/a+0+1+2.avro"));
+    assertFalse(CommittedFileName.isCommittedFile("6d6e2a1c_tmp.avro"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEndOffsetOfNotCommittedFile() {
+    CommittedFileName.endOffset("topic+0+1.avro");
+  }
+
+  @Test
+  public void testMatchesPattern() {
+    // Random names made of the characters that matter to the pattern, half of them starting like
+    // a committed file, have to be accepted and parsed exactly as the pattern does
+    String chars = "a0129+._-x\n";
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; ++i) {
+      StringBuilder sb = new StringBuilder();
+      if (random.nextBoolean()) {
+        sb.append("t+").append(random.nextInt(10)).append('+').append(random.nextInt(100));
+        sb.append('+');
+      }
+      int length = random.nextInt(12);
+      for (int j = 0; j < length; ++j) {
+        sb.append(chars.charAt(random.nextInt(chars.length())));
+      }
+      String name = sb.toString();
+
+      Matcher m = HdfsSinkConnectorConstants.COMMITTED_FILENAME_PATTERN.matcher(name);
+      boolean matches = m.matches();
+      assertEquals(name, matches, CommittedFileName.isCommittedFile(name));
+      if (matches) {
+        String topic = m.group(HdfsSinkConnectorConstants.PATTERN_TOPIC_GROUP);
+        assertEquals(name, topic, CommittedFileName.topic(name));
+        assertEquals(
+            name,
+            Integer.parseInt(m.group(HdfsSinkConnectorConstants.PATTERN_PARTITION_GROUP)),
+            CommittedFileName.partition(name)
+        );
+        assertEquals(
+            name,
+            Long.parseLong(m.group(HdfsSinkConnectorConstants.PATTERN_START_OFFSET_GROUP)),
+            CommittedFileName.startOffset(name)
+        );
+        assertEquals(
+            name,
+            Long.parseLong(m.group(HdfsSinkConnectorConstants.PATTERN_END_OFFSET_GROUP)),
+            CommittedFileName.endOffset(name)
+        );
+      }
+    }
+  }
+}
@@ -90,6 +90,46 @@ public class FailureRecoveryTest extends HdfsSinkConnectorTestBase {
     hdfsWriter.stop();
   }
 
+  @Test
+  public void testAsyncCommitFailure() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.ASYNC_COMMIT_CONFIG, "true");
+    HdfsSinkConnectorConfig config = new HdfsSinkConnectorConfig(props);
+    String key = "key";
+    Schema schema = createSchema();
+    Struct record = createRecord(schema);
+
+    Collection<SinkRecord> sinkRecords = new ArrayList<>();
+    for (long offset = 0; offset < 7; offset++) {
+      SinkRecord sinkRecord =
+          new SinkRecord(TOPIC, PARTITION, Schema.STRING_SCHEMA, key, schema, record, offset);
+      sinkRecords.add(sinkRecord);
+    }
+
+    DataWriter hdfsWriter = new DataWriter(config, context, avroData);
+    MemoryStorage storage = (MemoryStorage) hdfsWriter.getStorage();
+    storage.setFailure(MemoryStorage.Failure.commitFailure);
+
+    // The first commit fails in the background, which the second rotation finds out
+    hdfsWriter.write(sinkRecords);
+    assertEquals(context.timeout(), (long) config.getLong(HdfsSinkConnectorConfig.RETRY_BACKOFF_CONFIG));
+
+    Map<String, List<Object>> data = Data.getData();
+    String directory = TOPIC + "/" + "partition=" + String.valueOf(PARTITION);
+    String path = FileUtils.committedFileName(url, topicsDir, directory, TOPIC_PARTITION, 0L, 2L,
+                                              extension, ZERO_PAD_FMT);
+
+    // The failed commit is not submitted again before the backoff
+    hdfsWriter.write(new ArrayList<SinkRecord>());
+    assertEquals(null, data.get(path));
+
+    Thread.sleep(context.timeout());
+    hdfsWriter.write(new ArrayList<SinkRecord>());
+    hdfsWriter.close();
+    assertEquals(3, data.get(path).size());
+    hdfsWriter.stop();
+  }
+
   @Test
   public void testWriterFailureMultiPartitions() throws Exception {
     String key = "key";
@@ -87,6 +87,15 @@ public class HdfsSinkConnectorConfigTest extends TestWithMiniDFSCluster {
     Assert.assertTrue("Expected the constructor to throw an exception", false);
   }
 
+  @Test(expected = ConfigException.class)
+  public void testLocalWalWithoutDirectory() {
+    properties.put(
+        HdfsSinkConnectorConfig.WAL_BACKEND_CONFIG,
+        HdfsSinkConnectorConfig.WAL_BACKEND_LOCAL
+    );
+    new HdfsSinkConnectorConfig(properties);
+  }
+
   @Test
   public void testRecommendedValues() throws Exception {
     List<Object> expectedStorageClasses = Arrays.<Object>asList(HdfsStorage.class);
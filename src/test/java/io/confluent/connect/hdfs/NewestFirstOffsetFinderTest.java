@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import io.confluent.connect.hdfs.filter.TopicPartitionCommittedFileFilter;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NewestFirstOffsetFinderTest extends TestWithMiniDFSCluster {
+  private static final String PATH_FORMAT = "'year'=YYYY/'month'=MMMM/'day'=dd";
+
+  @Test
+  public void testFindsNewestDirectoryFirst() throws Exception {
+    setUp();
+    Path topicDir = new Path(FileUtils.topicDirectory(url, topicsDir, TOPIC));
+    TopicPartition other = new TopicPartition(TOPIC, PARTITION + 1);
+    // Month names sort as April, February, January, so the newest is only found by their time
+    createFile(topicDir, "year=2019/month=January/day=31", TOPIC_PARTITION, 0, 99);
+    createFile(topicDir, "year=2019/month=February/day=01", TOPIC_PARTITION, 100, 199);
+    createFile(topicDir, "year=2019/month=February/day=02", TOPIC_PARTITION, 200, 299);
+    createFile(topicDir, "year=2019/month=February/day=02", TOPIC_PARTITION, 300, 399);
+    createFile(topicDir, "year=2019/month=April/day=01", other, 0, 9);
+    // Not reached, as a later offset is never written to an older directory
+    createFile(topicDir, "year=2018/month=December/day=31", TOPIC_PARTITION, 1000, 1099);
+
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    NewestFirstOffsetFinder finder = new NewestFirstOffsetFinder(
+        storage,
+        PATH_FORMAT,
+        Locale.ENGLISH
+    );
+    FileStatus fileStatus = finder.fileStatusWithMaxOffset(
+        topicDir,
+        new TopicPartitionCommittedFileFilter(TOPIC_PARTITION)
+    );
+    assertEquals(399, FileUtils.extractOffset(fileStatus.getPath().getName()));
+
+    assertNull(finder.fileStatusWithMaxOffset(
+        new Path(FileUtils.topicDirectory(url, topicsDir, "missing")),
+        new TopicPartitionCommittedFileFilter(TOPIC_PARTITION)
+    ));
+    storage.close();
+  }
+
+  @Test
+  public void testListsDirectoryNotMatchingPathFormat() throws Exception {
+    setUp();
+    Path topicDir = new Path(FileUtils.topicDirectory(url, topicsDir, TOPIC));
+    createFile(topicDir, "year=2019/month=February/day=01", TOPIC_PARTITION, 0, 99);
+    createFile(topicDir, "year=2019/backfill", TOPIC_PARTITION, 100, 199);
+
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    NewestFirstOffsetFinder finder = new NewestFirstOffsetFinder(
+        storage,
+        PATH_FORMAT,
+        Locale.ENGLISH
+    );
+    FileStatus fileStatus = finder.fileStatusWithMaxOffset(
+        topicDir,
+        new TopicPartitionCommittedFileFilter(TOPIC_PARTITION)
+    );
+    assertEquals(199, FileUtils.extractOffset(fileStatus.getPath().getName()));
+    storage.close();
+  }
+
+  private void createFile(
+      Path topicDir,
+      String directory,
+      TopicPartition tp,
+      long startOffset,
+      long endOffset
+  ) throws Exception {
+    Path dir = new Path(topicDir, directory);
+    fs.mkdirs(dir);
+    fs.createNewFile(new Path(
+        dir,
+        tp.topic() + "+" + tp.partition() + "+" + startOffset + "+" + endOffset + ".avro"
+    ));
+  }
+}
@@ -17,6 +17,7 @@ package io.confluent.connect.hdfs.avro;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,6 +33,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import io.confluent.common.utils.MockTime;
 import io.confluent.common.utils.Time;
 import io.confluent.connect.hdfs.DataWriter;
 import io.confluent.connect.hdfs.FileUtils;
@@ -44,6 +46,7 @@ import io.confluent.connect.storage.partitioner.PartitionerConfig;
 import io.confluent.connect.storage.partitioner.TimeBasedPartitioner;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -115,6 +118,40 @@ public class DataWriterAvroTest extends TestWithMiniDFSCluster {
     verifyFileListing(validOffsets, Collections.singleton(new TopicPartition(TOPIC, PARTITION)));
   }
 
+  @Test
+  public void testRecoveryInParallel() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.RECOVERY_THREADS_CONFIG, "3");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+
+    for (TopicPartition tp : context.assignment()) {
+      fs.delete(new Path(FileUtils.directoryName(url, topicsDir, tp)), true);
+      WAL wal = storage.wal(logsDir, tp);
+      wal.append(WAL.beginMarker, "");
+      String directory = getDirectory(tp.topic(), tp.partition());
+      String tempfile = FileUtils.tempFileName(url, topicsDir, directory, extension);
+      fs.createNewFile(new Path(tempfile));
+      String committedFile = FileUtils.committedFileName(url, topicsDir, directory, tp, 0, 9,
+                                                         extension, zeroPadFormat);
+      wal.append(tempfile, committedFile);
+      wal.append(WAL.endMarker, "");
+      wal.close();
+    }
+
+    hdfsWriter.recover(context.assignment());
+    Map<TopicPartition, Long> offsets = context.offsets();
+    for (TopicPartition tp : context.assignment()) {
+      assertEquals(10L, (long) offsets.get(tp));
+    }
+
+    hdfsWriter.close();
+    hdfsWriter.stop();
+  }
+
   @Test
   public void testWriteRecordMultiplePartitions() throws Exception {
     DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
@@ -135,6 +172,127 @@ public class DataWriterAvroTest extends TestWithMiniDFSCluster {
     verify(sinkRecords, validOffsets, context.assignment());
   }
 
+  @Test
+  public void testWriteRecordMultiplePartitionsInParallel() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.WRITE_THREADS_CONFIG, "3");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+
+    for (TopicPartition tp : context.assignment()) {
+      hdfsWriter.recover(tp);
+    }
+
+    List<SinkRecord> sinkRecords = createSinkRecordsInterleaved(7 * context.assignment().size(), 0,
+        context.assignment());
+
+    hdfsWriter.write(sinkRecords);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // Last file (offset 6) doesn't satisfy size requirement and gets discarded on close
+    long[] validOffsets = {0, 3, 6};
+    verify(sinkRecords, validOffsets, context.assignment());
+  }
+
+  @Test
+  public void testWriteRecordAsyncCommit() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.ASYNC_COMMIT_CONFIG, "true");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+
+    for (TopicPartition tp : context.assignment()) {
+      hdfsWriter.recover(tp);
+    }
+
+    List<SinkRecord> sinkRecords = createSinkRecords(7, 0, context.assignment());
+
+    hdfsWriter.write(sinkRecords);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // Closing waits for the commits in flight. Last file (offset 6) doesn't satisfy size
+    // requirement and gets discarded on close
+    long[] validOffsets = {0, 3, 6};
+    verify(sinkRecords, validOffsets, context.assignment());
+  }
+
+  @Test
+  public void testWriteRecordOverMemoryBudget() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.MEMORY_BUDGET_BYTES_CONFIG, "1");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createSinkRecords(7);
+
+    hdfsWriter.write(sinkRecords);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // The paused partition commits its last file once its buffered records are written
+    long[] validOffsets = {0, 3, 6, 7};
+    verify(sinkRecords, validOffsets);
+  }
+
+  @Test
+  public void testThrottledPartitionIsResumed() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.MEMORY_BUDGET_BYTES_CONFIG, "1");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    MockTime time = new MockTime();
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData, time);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createSinkRecords(7);
+
+    hdfsWriter.write(sinkRecords);
+    assertTrue(hdfsWriter.getBucketWriter(TOPIC_PARTITION).isThrottled());
+
+    // No records arrive while the partition is paused, and the data of its open file must not
+    // keep it paused
+    for (int i = 0; i < 5 && hdfsWriter.getBucketWriter(TOPIC_PARTITION).isThrottled(); ++i) {
+      time.sleep(500);
+      hdfsWriter.write(new ArrayList<SinkRecord>());
+    }
+    assertFalse(hdfsWriter.getBucketWriter(TOPIC_PARTITION).isThrottled());
+
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    long[] validOffsets = {0, 3, 6, 7};
+    verify(sinkRecords, validOffsets);
+  }
+
+  @Test(expected = ConnectException.class)
+  public void testWriteRecordUnassignedPartition() throws Exception {
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createSinkRecords(
+        3,
+        0,
+        Collections.singleton(new TopicPartition(TOPIC, 42))
+    );
+
+    try {
+      hdfsWriter.write(sinkRecords);
+    } finally {
+      hdfsWriter.close();
+      hdfsWriter.stop();
+    }
+  }
+
   @Test
   public void testWriteInterleavedRecordsInMultiplePartitions() throws Exception {
     DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
@@ -201,6 +359,63 @@ public class DataWriterAvroTest extends TestWithMiniDFSCluster {
     hdfsWriter.stop();
   }
 
+  @Test
+  public void testGetPreviousOffsetsFromManifest() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.OFFSETS_MANIFEST_CONFIG, "true");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+    hdfsWriter.write(createSinkRecords(7));
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // Only the manifest of the last commit is kept
+    String manifestDir = FileUtils.directoryName(url, logsDir, TOPIC_PARTITION);
+    assertFalse(fs.exists(new Path(manifestDir + "/manifest.00000000000000000002")));
+    assertTrue(fs.exists(new Path(manifestDir + "/manifest.00000000000000000005")));
+
+    hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    hdfsWriter.recover(TOPIC_PARTITION);
+    Map<TopicPartition, Long> committedOffsets = hdfsWriter.getCommittedOffsets();
+    assertEquals(6L, (long) committedOffsets.get(TOPIC_PARTITION));
+    hdfsWriter.close();
+    hdfsWriter.stop();
+  }
+
+  @Test
+  public void testIgnoreManifestAfterDisablingIt() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.OFFSETS_MANIFEST_CONFIG, "true");
+    HdfsSinkConnectorConfig manifestConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(manifestConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+    hdfsWriter.write(createSinkRecords(7));
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // Files are committed past the manifest while it is disabled
+    hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    hdfsWriter.recover(TOPIC_PARTITION);
+    hdfsWriter.write(createSinkRecords(7, 6));
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    String manifestDir = FileUtils.directoryName(url, logsDir, TOPIC_PARTITION);
+    assertFalse(fs.exists(new Path(manifestDir + "/manifest.00000000000000000005")));
+
+    hdfsWriter = new DataWriter(manifestConfig, context, avroData);
+    hdfsWriter.recover(TOPIC_PARTITION);
+    Map<TopicPartition, Long> committedOffsets = hdfsWriter.getCommittedOffsets();
+    assertEquals(12L, (long) committedOffsets.get(TOPIC_PARTITION));
+    hdfsWriter.close();
+    hdfsWriter.stop();
+  }
+
   @Test
   public void testWriteRecordNonZeroInitialOffset() throws Exception {
     DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
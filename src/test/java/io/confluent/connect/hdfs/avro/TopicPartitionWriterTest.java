@@ -206,6 +206,65 @@ public class TopicPartitionWriterTest extends TestWithMiniDFSCluster {
     verify(expectedFiles, expectedBatchSize, records, schema);
   }
 
+  @Test
+  public void testWriteRecordFieldPartitionerMaxOpenWriters() throws Exception {
+    localProps.put(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG, "100");
+    localProps.put(HdfsSinkConnectorConfig.MAX_OPEN_WRITERS_CONFIG, "2");
+    setUp();
+    Partitioner partitioner = new FieldPartitioner();
+    partitioner.configure(parsedConfig);
+
+    @SuppressWarnings("unchecked")
+    List<String> partitionFields = (List<String>) parsedConfig.get(
+        PartitionerConfig.PARTITION_FIELD_NAME_CONFIG
+    );
+    String partitionField = partitionFields.get(0);
+
+    TopicPartitionWriter topicPartitionWriter = new TopicPartitionWriter(
+        TOPIC_PARTITION,
+        storage,
+        writerProvider,
+        newWriterProvider,
+        partitioner,
+        connectorConfig,
+        context,
+        avroData,
+        time
+    );
+
+    Schema schema = createSchema();
+    List<Struct> records = new ArrayList<>();
+    for (int i = 16; i < 19; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        records.add(createRecord(schema, i, 12.2f));
+      }
+    }
+    records.add(createRecord(schema));
+    List<SinkRecord> sinkRecords = createSinkRecords(records, schema);
+
+    for (SinkRecord record : sinkRecords) {
+      topicPartitionWriter.buffer(record);
+    }
+
+    topicPartitionWriter.recover();
+    topicPartitionWriter.write();
+    topicPartitionWriter.close();
+
+    String directory1 = partitioner.generatePartitionedPath(TOPIC, partitionField + "=" + String.valueOf(16));
+    String directory2 = partitioner.generatePartitionedPath(TOPIC, partitionField + "=" + String.valueOf(17));
+    String directory3 = partitioner.generatePartitionedPath(TOPIC, partitionField + "=" + String.valueOf(18));
+
+    // Opening the third file closes the first one. The last record goes to the closed file, which
+    // commits all three files, and its new file is discarded on close.
+    Set<Path> expectedFiles = new HashSet<>();
+    expectedFiles.add(new Path(FileUtils.committedFileName(url, topicsDir, directory1, TOPIC_PARTITION, 0, 2, extension, zeroPadFormat)));
+    expectedFiles.add(new Path(FileUtils.committedFileName(url, topicsDir, directory2, TOPIC_PARTITION, 3, 5, extension, zeroPadFormat)));
+    expectedFiles.add(new Path(FileUtils.committedFileName(url, topicsDir, directory3, TOPIC_PARTITION, 6, 8, extension, zeroPadFormat)));
+
+    int expectedBatchSize = 3;
+    verify(expectedFiles, expectedBatchSize, records, schema);
+  }
+
   @Test
   public void testWriteRecordTimeBasedPartition() throws Exception {
     setUp();
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.metrics;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.metrics.Metrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HdfsSinkMetricsTest {
+  private static final TopicPartition TOPIC_PARTITION = new TopicPartition("topic", 12);
+
+  private Metrics metrics;
+  private HdfsSinkMetrics sinkMetrics;
+
+  @Before
+  public void setUp() {
+    metrics = new Metrics();
+    sinkMetrics = new HdfsSinkMetrics("connector", 3, metrics);
+  }
+
+  @After
+  public void tearDown() {
+    sinkMetrics.close();
+  }
+
+  @Test
+  public void testRecordPartitionMetrics() {
+    TopicPartitionMetrics partitionMetrics = sinkMetrics.forPartition(TOPIC_PARTITION);
+    partitionMetrics.recordWritten();
+    partitionMetrics.recordWritten();
+    partitionMetrics.fileClosed(1000L);
+    partitionMetrics.bytesWritten(100L);
+    partitionMetrics.rotated(RotationReason.SIZE);
+
+    assertEquals(2.0, value("record-write-total"), 0.0);
+    assertEquals(100.0, value("byte-write-total"), 0.0);
+    assertEquals(1.0, value("rotation-size-total"), 0.0);
+    assertEquals(0.0, value("rotation-schema-total"), 0.0);
+  }
+
+  @Test
+  public void testTagWithConnectorAndTask() {
+    sinkMetrics.forPartition(TOPIC_PARTITION);
+
+    Map<String, String> tags = metricName("record-write-total").tags();
+    assertEquals("connector", tags.get("connector"));
+    assertEquals("3", tags.get("task"));
+  }
+
+  @Test
+  public void testRegisterBytesWrittenOnceKnown() {
+    TopicPartitionMetrics partitionMetrics = sinkMetrics.forPartition(TOPIC_PARTITION);
+    partitionMetrics.fileClosed(1000L);
+    assertNull(metricName("byte-write-total"));
+
+    partitionMetrics.bytesWritten(100L);
+    assertEquals(100.0, value("byte-write-total"), 0.0);
+
+    partitionMetrics.close();
+    assertNull(metricName("byte-write-total"));
+  }
+
+  @Test
+  public void testRegisterPartitionAgain() {
+    TopicPartitionMetrics previous = sinkMetrics.forPartition(TOPIC_PARTITION);
+    TopicPartitionMetrics current = sinkMetrics.forPartition(TOPIC_PARTITION);
+    current.recordWritten();
+
+    // Closing the replaced metrics leaves the current ones registered
+    previous.close();
+    assertEquals(1.0, value("record-write-total"), 0.0);
+
+    current.close();
+    assertNull(metrics.metrics().get(metricName("record-write-total")));
+  }
+
+  private double value(String name) {
+    return (Double) metrics.metrics().get(metricName(name)).metricValue();
+  }
+
+  private MetricName metricName(String name) {
+    for (MetricName metricName : metrics.metrics().keySet()) {
+      Map<String, String> tags = metricName.tags();
+      if (metricName.name().equals(name)
+          && TopicPartitionMetrics.GROUP.equals(metricName.group())
+          && TOPIC_PARTITION.topic().equals(tags.get("topic"))
+          && String.valueOf(TOPIC_PARTITION.partition()).equals(tags.get("partition"))) {
+        return metricName;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package io.confluent.connect.hdfs.partitioner;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.confluent.connect.hdfs.DataWriter;
+import io.confluent.connect.hdfs.HdfsSinkConnectorTestBase;
+import io.confluent.connect.storage.partitioner.HourlyPartitioner;
+import io.confluent.connect.storage.partitioner.PartitionerConfig;
+
+import static org.junit.Assert.assertEquals;
+
+public class PartitionerWrapperTest extends HdfsSinkConnectorTestBase {
+
+  @Test
+  public void testTimeBasedEncodingMatchesPartitioner() throws Exception {
+    setUp();
+    Map<String, Object> config = new HashMap<>(parsedConfig);
+    config.put(PartitionerConfig.TIMESTAMP_EXTRACTOR_CLASS_CONFIG, "Record");
+
+    HourlyPartitioner<FieldSchema> expected = new HourlyPartitioner<>();
+    expected.configure(config);
+    DataWriter.PartitionerWrapper partitioner =
+        new DataWriter.PartitionerWrapper(new HourlyPartitioner<FieldSchema>());
+    partitioner.configure(config);
+
+    // Every ten minutes across the end of daylight saving time, when an hour repeats
+    String timeZoneString = (String) parsedConfig.get(PartitionerConfig.TIMEZONE_CONFIG);
+    long start = new DateTime(2015, 10, 31, 22, 0, 0, 0, DateTimeZone.forID(timeZoneString))
+        .getMillis();
+    for (int i = 0; i < 60; ++i) {
+      long timestamp = start + TimeUnit.MINUTES.toMillis(10 * i);
+      SinkRecord record = new SinkRecord(TOPIC, PARTITION, null, null, null, null, i, timestamp,
+          TimestampType.CREATE_TIME);
+      String encodedPartition = partitioner.encodePartition(record);
+      assertEquals(expected.encodePartition(record), encodedPartition);
+      assertEquals(
+          expected.generatePartitionedPath(TOPIC, encodedPartition),
+          partitioner.generatePartitionedPath(TOPIC, encodedPartition)
+      );
+    }
+  }
+}
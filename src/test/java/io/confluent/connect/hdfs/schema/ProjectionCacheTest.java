@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.schema;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.SchemaProjector;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.errors.SchemaProjectorException;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.Test;
+
+import io.confluent.connect.storage.schema.StorageSchemaCompatibility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ProjectionCacheTest {
+  private static final Schema SOURCE_SCHEMA = SchemaBuilder.struct().name("record").version(1)
+      .field("int", Schema.INT32_SCHEMA)
+      .field("string", Schema.STRING_SCHEMA)
+      .build();
+
+  private static final Schema TARGET_SCHEMA = SchemaBuilder.struct().name("record").version(2)
+      .field("int", Schema.INT64_SCHEMA)
+      .field("string", Schema.STRING_SCHEMA)
+      .field("default", SchemaBuilder.int32().defaultValue(12).build())
+      .field("optional", Schema.OPTIONAL_FLOAT64_SCHEMA)
+      .build();
+
+  private final ProjectionCache projections =
+      new ProjectionCache(StorageSchemaCompatibility.BACKWARD);
+
+  @Test
+  public void testProjectMatchesSchemaProjector() {
+    for (int i = 0; i < 3; ++i) {
+      Struct value = new Struct(SOURCE_SCHEMA).put("int", i).put("string", "value" + i);
+      SinkRecord record = new SinkRecord("topic", 0, null, null, SOURCE_SCHEMA, value, i);
+
+      SinkRecord projected = projections.project(record, TARGET_SCHEMA);
+      assertSame(TARGET_SCHEMA, projected.valueSchema());
+      assertEquals(SchemaProjector.project(SOURCE_SCHEMA, value, TARGET_SCHEMA), projected.value());
+      assertEquals((long) i, projected.kafkaOffset());
+    }
+  }
+
+  @Test
+  public void testProjectEqualSchemaInstances() {
+    // Converters that do not cache schemas create a new instance for every record
+    for (int i = 0; i < 3; ++i) {
+      Schema source = SchemaBuilder.struct().name("record").version(1)
+          .field("int", Schema.INT32_SCHEMA)
+          .field("string", Schema.STRING_SCHEMA)
+          .build();
+      Schema target = SchemaBuilder.struct().name("record").version(2)
+          .field("int", Schema.INT64_SCHEMA)
+          .field("string", Schema.STRING_SCHEMA)
+          .field("default", SchemaBuilder.int32().defaultValue(12).build())
+          .field("optional", Schema.OPTIONAL_FLOAT64_SCHEMA)
+          .build();
+      Struct value = new Struct(source).put("int", i).put("string", "value" + i);
+      SinkRecord record = new SinkRecord("topic", 0, null, null, source, value, i);
+
+      SinkRecord projected = projections.project(record, target);
+      assertSame(target, projected.valueSchema());
+      assertSame(target, ((Struct) projected.value()).schema());
+      assertEquals(SchemaProjector.project(source, value, target), projected.value());
+    }
+  }
+
+  @Test
+  public void testProjectSameSchema() {
+    Struct value = new Struct(SOURCE_SCHEMA).put("int", 1).put("string", "value");
+    SinkRecord record = new SinkRecord("topic", 0, null, null, SOURCE_SCHEMA, value, 0);
+    assertSame(record, projections.project(record, SOURCE_SCHEMA));
+  }
+
+  @Test(expected = SchemaProjectorException.class)
+  public void testProjectMissingRequiredField() {
+    Schema target = SchemaBuilder.struct().name("record").version(2)
+        .field("int", Schema.INT32_SCHEMA)
+        .field("required", Schema.STRING_SCHEMA)
+        .build();
+    Struct value = new Struct(SOURCE_SCHEMA).put("int", 1).put("string", "value");
+    projections.project(new SinkRecord("topic", 0, null, null, SOURCE_SCHEMA, value, 0), target);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.storage;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.FileUtils;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+import io.confluent.connect.hdfs.filter.CommittedFileFilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DirectoryTraversalTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testTraverseInParallel() throws Exception {
+    setUp();
+    Path root = new Path(FileUtils.topicDirectory(url, topicsDir, TOPIC));
+    List<Path> files = new ArrayList<>();
+    List<Path> leaves = new ArrayList<>();
+    long offset = 0;
+    for (int day = 1; day <= 3; ++day) {
+      for (int hour = 0; hour < 4; ++hour) {
+        Path dir = new Path(root, "year=2019/month=01/day=0" + day + "/hour=0" + hour);
+        fs.mkdirs(dir);
+        leaves.add(Path.getPathWithoutSchemeAndAuthority(dir));
+        Path file = new Path(
+            dir,
+            TOPIC + "+" + PARTITION + "+" + offset + "+" + (offset + 9) + ".avro"
+        );
+        fs.createNewFile(file);
+        files.add(Path.getPathWithoutSchemeAndAuthority(file));
+        offset += 10;
+      }
+    }
+    fs.createNewFile(new Path(root, "year=2019/month=01/day=01/hour=00/uncommitted"));
+
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.DIRECTORY_LISTING_THREADS_CONFIG, "4");
+    HdfsStorage sequential = new HdfsStorage(connectorConfig, url);
+    HdfsStorage parallel = new HdfsStorage(new HdfsSinkConnectorConfig(props), url);
+    for (HdfsStorage storage : new HdfsStorage[]{sequential, parallel}) {
+      FileStatus maxOffset = FileUtils.fileStatusWithMaxOffset(
+          storage,
+          root,
+          new CommittedFileFilter()
+      );
+      assertEquals(files.get(files.size() - 1), pathOf(maxOffset));
+
+      FileStatus[] committed = FileUtils.traverse(storage, root, new CommittedFileFilter());
+      assertArrayEquals(files.toArray(), pathsOf(committed));
+
+      FileStatus[] directories = FileUtils.getDirectories(storage, root);
+      assertArrayEquals(leaves.toArray(), pathsOf(directories));
+
+      Path missing = new Path(root, "missing");
+      assertNull(FileUtils.fileStatusWithMaxOffset(storage, missing, new CommittedFileFilter()));
+      assertEquals(0, FileUtils.traverse(storage, missing, new CommittedFileFilter()).length);
+      storage.close();
+    }
+  }
+
+  private static Path pathOf(FileStatus status) {
+    return Path.getPathWithoutSchemeAndAuthority(status.getPath());
+  }
+
+  private static Path[] pathsOf(FileStatus[] statuses) {
+    Path[] paths = new Path[statuses.length];
+    for (int i = 0; i < statuses.length; ++i) {
+      paths[i] = pathOf(statuses[i]);
+    }
+    return paths;
+  }
+}
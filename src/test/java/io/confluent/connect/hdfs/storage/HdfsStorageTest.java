@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.storage;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.Test;
+
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HdfsStorageTest extends TestWithMiniDFSCluster {
+
+  @Test
+  public void testCommit() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path tempFile = new Path(url + "/" + topicsDir + "/+tmp/temp.avro");
+    Path committedFile = new Path(url + "/" + topicsDir + "/topic/partition=0/topic+0+0+9.avro");
+    fs.mkdirs(tempFile.getParent());
+    fs.mkdirs(committedFile.getParent());
+    fs.createNewFile(tempFile);
+
+    storage.commit(tempFile.toString(), committedFile.toString());
+    assertFalse(fs.exists(tempFile));
+    assertTrue(fs.exists(committedFile));
+
+    // Committing again finds the temp file gone and leaves the committed file alone
+    storage.commit(tempFile.toString(), committedFile.toString());
+    assertTrue(fs.exists(committedFile));
+    storage.close();
+  }
+
+  @Test(expected = ConnectException.class)
+  public void testCommitFileWithoutTempFile() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path tempFile = new Path(url + "/" + topicsDir + "/+tmp/temp.avro");
+    Path committedFile = new Path(url + "/" + topicsDir + "/topic/partition=0/topic+0+0+9.avro");
+    fs.mkdirs(tempFile.getParent());
+
+    // The temp file of the writer is gone, so nothing is committed
+    try {
+      storage.commitFile(tempFile.toString(), committedFile.toString());
+    } finally {
+      storage.close();
+    }
+  }
+
+  @Test
+  public void testCommitCreatesMissingDirectory() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    Path tempFile = new Path(url + "/" + topicsDir + "/+tmp/temp.avro");
+    Path committedFile = new Path(url + "/" + topicsDir + "/topic/partition=1/topic+1+0+9.avro");
+    fs.mkdirs(tempFile.getParent());
+    fs.createNewFile(tempFile);
+
+    storage.commit(tempFile.toString(), committedFile.toString());
+    assertFalse(fs.exists(tempFile));
+    assertTrue(fs.exists(committedFile));
+    storage.close();
+  }
+}
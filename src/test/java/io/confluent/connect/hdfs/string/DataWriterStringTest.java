@@ -66,6 +66,32 @@ public class DataWriterStringTest extends TestWithMiniDFSCluster {
     verify(sinkRecords, validOffsets, context.assignment());
   }
 
+  @Test
+  public void testRotateBySize() throws Exception {
+    Map<String, String> props = createProps();
+    props.put(HdfsSinkConnectorConfig.FLUSH_SIZE_CONFIG, "100");
+    // Each record takes up 28 bytes, so files are rotated after every second record
+    props.put(HdfsSinkConnectorConfig.FLUSH_SIZE_BYTES_CONFIG, "50");
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(props);
+
+    DataWriter hdfsWriter = new DataWriter(connectorConfig, context, avroData);
+    partitioner = hdfsWriter.getPartitioner();
+    hdfsWriter.recover(TOPIC_PARTITION);
+
+    List<SinkRecord> sinkRecords = createStringRecords(
+        7 * context.assignment().size(),
+        context.assignment()
+    );
+
+    hdfsWriter.write(sinkRecords);
+    hdfsWriter.close();
+    hdfsWriter.stop();
+
+    // Last file (offset 6) doesn't satisfy size requirement and gets discarded on close
+    long[] validOffsets = {0, 2, 4, 6};
+    verify(sinkRecords, validOffsets, context.assignment());
+  }
+
   protected List<SinkRecord> createStringRecords(
       int size,
       Set<TopicPartition> partitions
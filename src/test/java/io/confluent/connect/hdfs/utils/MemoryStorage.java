@@ -24,6 +24,8 @@ import org.apache.kafka.connect.errors.ConnectException;
 
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +70,14 @@ public class MemoryStorage extends HdfsStorage {
     return result;
   }
 
+  @Override
+  public Iterator<FileStatus> listIterator(String path) {
+    if (!exists(path)) {
+      return Collections.emptyIterator();
+    }
+    return list(path).iterator();
+  }
+
   public List<FileStatus> list(String path, PathFilter filter) {
     if (failure == Failure.listStatusFailure) {
       failure = Failure.noFailure;
@@ -137,6 +147,14 @@ public class MemoryStorage extends HdfsStorage {
     }
   }
 
+  @Override
+  public void commitFile(String tempFile, String committedFile) {
+    commit(tempFile, committedFile);
+    if (!data.containsKey(committedFile)) {
+      throw new ConnectException("commit failed.");
+    }
+  }
+
   @Override
   public void close() {
     if (failure == Failure.closeFailure) {
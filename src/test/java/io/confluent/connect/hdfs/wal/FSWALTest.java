@@ -15,6 +15,7 @@
 package io.confluent.connect.hdfs.wal;
 
 import io.confluent.connect.hdfs.FileUtils;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
 import org.apache.hadoop.fs.Path;
 import org.apache.kafka.common.TopicPartition;
 import org.junit.Test;
@@ -24,11 +25,23 @@ import io.confluent.connect.hdfs.storage.HdfsStorage;
 import io.confluent.connect.hdfs.storage.Storage;
 
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class FSWALTest extends TestWithMiniDFSCluster {
+  private Map<String, String> localProps = new HashMap<>();
+
+  @Override
+  protected Map<String, String> createProps() {
+    Map<String, String> props = super.createProps();
+    props.putAll(localProps);
+    return props;
+  }
+
   @Test
   public void testTruncate() throws Exception {
     setUp();
@@ -50,6 +63,103 @@ public class FSWALTest extends TestWithMiniDFSCluster {
             storage.exists("/logs/mytopic/123/log.1"));
   }
   
+  @Test
+  public void testAppendTransaction() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    TopicPartition tp = new TopicPartition("mytopic", 123);
+    Map<String, String> files = new HashMap<>();
+    fs.mkdirs(new Path(url + "/topics/mytopic"));
+    for (int i = 0; i < 3; ++i) {
+      String tempFile = url + "/tmp/mytopic/" + i + ".avro";
+      fs.createNewFile(new Path(tempFile));
+      files.put(tempFile, url + "/topics/mytopic/" + i + ".avro");
+    }
+
+    FSWAL wal = new FSWAL("/logs", tp, storage);
+    wal.appendTransaction(files);
+    wal.close();
+
+    FSWAL recovered = new FSWAL("/logs", tp, storage);
+    recovered.apply();
+    recovered.close();
+    for (Map.Entry<String, String> entry : files.entrySet()) {
+      assertFalse(fs.exists(new Path(entry.getKey())));
+      assertTrue(fs.exists(new Path(entry.getValue())));
+    }
+  }
+
+  @Test
+  public void testApplyLastTransaction() throws Exception {
+    localProps.put(HdfsSinkConnectorConfig.WAL_TAIL_RECOVERY_CONFIG, "true");
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    TopicPartition tp = new TopicPartition("mytopic", 123);
+    FSWAL wal = new FSWAL("/logs", tp, storage);
+    // Enough transactions for the log to outgrow the first window read from its end
+    for (int i = 0; i < 1000; ++i) {
+      wal.appendTransaction(Collections.singletonMap(
+          url + "/tmp/mytopic/committed" + i + ".avro",
+          url + "/topics/mytopic/committed" + i + ".avro"
+      ));
+    }
+    String tempFile = url + "/tmp/mytopic/last.avro";
+    String committedFile = url + "/topics/mytopic/last.avro";
+    fs.mkdirs(new Path(url + "/topics/mytopic"));
+    fs.createNewFile(new Path(tempFile));
+    wal.appendTransaction(Collections.singletonMap(tempFile, committedFile));
+    // A transaction without an end marker is not applied
+    String incompleteFile = url + "/tmp/mytopic/incomplete.avro";
+    fs.createNewFile(new Path(incompleteFile));
+    wal.append(WAL.beginMarker, "");
+    wal.append(incompleteFile, url + "/topics/mytopic/incomplete.avro");
+    wal.close();
+
+    FSWAL recovered = new FSWAL("/logs", tp, storage);
+    recovered.apply();
+    recovered.close();
+    assertFalse(fs.exists(new Path(tempFile)));
+    assertTrue(fs.exists(new Path(committedFile)));
+    assertTrue(fs.exists(new Path(incompleteFile)));
+  }
+
+  @Test
+  public void testApplySkipsCommittedFiles() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    TopicPartition tp = new TopicPartition("mytopic", 123);
+    fs.mkdirs(new Path(url + "/topics/mytopic/a"));
+    fs.mkdirs(new Path(url + "/topics/mytopic/b"));
+    // Already committed, with a leftover temp file
+    String committedTempFile = url + "/tmp/mytopic/a/0.avro";
+    String committedFile = url + "/topics/mytopic/a/0.avro";
+    fs.createNewFile(new Path(committedTempFile));
+    fs.createNewFile(new Path(committedFile));
+    // Not committed yet
+    String tempFile = url + "/tmp/mytopic/b/1.avro";
+    String uncommittedFile = url + "/topics/mytopic/b/1.avro";
+    fs.createNewFile(new Path(tempFile));
+    // Neither the temp nor the committed file exist any more
+    String missingFile = url + "/topics/missing/2.avro";
+
+    Map<String, String> files = new HashMap<>();
+    files.put(committedTempFile, committedFile);
+    files.put(tempFile, uncommittedFile);
+    files.put(url + "/tmp/missing/2.avro", missingFile);
+    FSWAL wal = new FSWAL("/logs", tp, storage);
+    wal.appendTransaction(files);
+    wal.close();
+
+    FSWAL recovered = new FSWAL("/logs", tp, storage);
+    recovered.apply();
+    recovered.close();
+    assertTrue(fs.exists(new Path(committedTempFile)));
+    assertTrue(fs.exists(new Path(committedFile)));
+    assertFalse(fs.exists(new Path(tempFile)));
+    assertTrue(fs.exists(new Path(uncommittedFile)));
+    assertFalse(fs.exists(new Path(missingFile)));
+  }
+
   @Test
   public void testEmptyWalFileRecovery() throws Exception {
     setUp();
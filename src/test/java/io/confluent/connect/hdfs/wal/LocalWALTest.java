@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import io.confluent.connect.hdfs.FileUtils;
+import io.confluent.connect.hdfs.HdfsSinkConnectorConfig;
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalWALTest extends TestWithMiniDFSCluster {
+  private static final TopicPartition TP = new TopicPartition("mytopic", 123);
+
+  @Test
+  public void testApply() throws Exception {
+    HdfsStorage storage = createStorage();
+    String tempFile = createTempFile("0");
+    String committedFile = url + "/topics/mytopic/0.avro";
+
+    LocalWAL wal = new LocalWAL("/logs", TP, storage);
+    wal.append(WAL.beginMarker, "");
+    wal.append(tempFile, committedFile);
+    wal.append(WAL.endMarker, "");
+    // A transaction without an end marker is not applied
+    String incompleteFile = createTempFile("1");
+    wal.append(WAL.beginMarker, "");
+    wal.append(incompleteFile, url + "/topics/mytopic/1.avro");
+    wal.close();
+
+    LocalWAL recovered = new LocalWAL("/logs", TP, storage);
+    recovered.apply();
+    recovered.close();
+    assertFalse(fs.exists(new Path(tempFile)));
+    assertTrue(fs.exists(new Path(committedFile)));
+    assertTrue(fs.exists(new Path(incompleteFile)));
+  }
+
+  @Test
+  public void testApplyLastTransaction() throws Exception {
+    HdfsStorage storage = createStorage();
+    LocalWAL wal = new LocalWAL("/logs", TP, storage);
+    // Enough transactions for the log to wrap around to its start
+    for (int i = 0; i < 10000; ++i) {
+      wal.appendTransaction(Collections.singletonMap(
+          url + "/tmp/committed" + i + ".avro",
+          url + "/topics/mytopic/committed" + i + ".avro"
+      ));
+    }
+    String tempFile = createTempFile("last");
+    String committedFile = url + "/topics/mytopic/last.avro";
+    wal.appendTransaction(Collections.singletonMap(tempFile, committedFile));
+    wal.close();
+
+    LocalWAL recovered = new LocalWAL("/logs", TP, storage);
+    recovered.apply();
+    recovered.close();
+    assertFalse(fs.exists(new Path(tempFile)));
+    assertTrue(fs.exists(new Path(committedFile)));
+  }
+
+  @Test
+  public void testApplyIgnoresCorruptRecord() throws Exception {
+    HdfsStorage storage = createStorage();
+    String tempFile = createTempFile("0");
+    String committedFile = url + "/topics/mytopic/0.avro";
+
+    LocalWAL wal = new LocalWAL("/logs", TP, storage);
+    wal.appendTransaction(Collections.singletonMap(tempFile, committedFile));
+    wal.close();
+
+    // Flip a byte of the name of the temp file, as a partly written record would
+    try (RandomAccessFile file = new RandomAccessFile(wal.getLogFile(), "rw")) {
+      file.seek(40);
+      int b = file.read();
+      file.seek(40);
+      file.write(b ^ 0xff);
+    }
+
+    LocalWAL recovered = new LocalWAL("/logs", TP, storage);
+    recovered.apply();
+    recovered.close();
+    assertTrue(fs.exists(new Path(tempFile)));
+    assertFalse(fs.exists(new Path(committedFile)));
+  }
+
+  @Test
+  public void testTruncate() throws Exception {
+    HdfsStorage storage = createStorage();
+    String tempFile = createTempFile("0");
+    String committedFile = url + "/topics/mytopic/0.avro";
+    Map<String, String> files = Collections.singletonMap(tempFile, committedFile);
+
+    LocalWAL wal = new LocalWAL("/logs", TP, storage);
+    wal.appendTransaction(files);
+    wal.apply();
+    wal.truncate();
+
+    // The HDFS log is truncated as well
+    String hdfsLogFile = FileUtils.logFileName(url, "/logs", TP);
+    assertTrue(fs.exists(new Path(hdfsLogFile + ".1")));
+
+    // Entries before the truncate are not applied again
+    fs.delete(new Path(committedFile), false);
+    fs.createNewFile(new Path(tempFile));
+    LocalWAL recovered = new LocalWAL("/logs", TP, storage);
+    recovered.apply();
+    recovered.close();
+    assertTrue(fs.exists(new Path(tempFile)));
+    assertFalse(fs.exists(new Path(committedFile)));
+  }
+
+  @Test
+  public void testApplyOnAnotherWorker() throws Exception {
+    HdfsStorage storage = createStorage();
+    String tempFile = createTempFile("0");
+    String committedFile = url + "/topics/mytopic/0.avro";
+
+    LocalWAL wal = new LocalWAL("/logs", TP, storage);
+    wal.appendTransaction(Collections.singletonMap(tempFile, committedFile));
+    wal.close();
+
+    // Another worker has none of the local logs of this one
+    LocalWAL recovered = new LocalWAL("/logs", TP, createLocalStorage());
+    recovered.apply();
+    recovered.close();
+    assertFalse(fs.exists(new Path(tempFile)));
+    assertTrue(fs.exists(new Path(committedFile)));
+  }
+
+  private HdfsStorage createStorage() throws Exception {
+    setUp();
+    fs.mkdirs(new Path(url + "/topics/mytopic"));
+    return createLocalStorage();
+  }
+
+  private HdfsStorage createLocalStorage() throws Exception {
+    File localDir = Files.createTempDirectory("local-wal").toFile();
+    localDir.deleteOnExit();
+    Map<String, String> props = createProps();
+    props.put(
+        HdfsSinkConnectorConfig.WAL_BACKEND_CONFIG,
+        HdfsSinkConnectorConfig.WAL_BACKEND_LOCAL
+    );
+    props.put(HdfsSinkConnectorConfig.WAL_LOCAL_DIR_CONFIG, localDir.getPath());
+    return new HdfsStorage(new HdfsSinkConnectorConfig(props), url);
+  }
+
+  private String createTempFile(String name) throws Exception {
+    String tempFile = url + "/tmp/" + name + ".avro";
+    fs.createNewFile(new Path(tempFile));
+    return tempFile;
+  }
+}
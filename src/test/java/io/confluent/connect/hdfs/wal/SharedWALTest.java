@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 Confluent Inc.
+ *
+ * Licensed under the Confluent Community License; you may not use this file
+ * except in compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.confluent.io/confluent-community-license
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OF ANY KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+
+package io.confluent.connect.hdfs.wal;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.errors.ConnectException;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
+import io.confluent.connect.hdfs.storage.HdfsStorage;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SharedWALTest extends TestWithMiniDFSCluster {
+  private static final TopicPartition TP1 = new TopicPartition("mytopic", 1);
+  private static final TopicPartition TP2 = new TopicPartition("my-topic", 2);
+
+  @Test
+  public void testApplyFromLogOfAnotherTask() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    String tempFile1 = createTempFile("1");
+    String tempFile2 = createTempFile("2");
+    String committedFile1 = url + "/topics/mytopic/1.avro";
+    String committedFile2 = url + "/topics/my-topic/2.avro";
+
+    // A task writes transactions for two topic partitions and stops without committing them
+    SharedWAL previous = new SharedWAL("/logs", storage);
+    TransactionalWAL previousWal1 = (TransactionalWAL) previous.forPartition(TP1);
+    previousWal1.apply();
+    previousWal1.appendTransaction(Collections.singletonMap(tempFile1, committedFile1));
+    TransactionalWAL previousWal2 = (TransactionalWAL) previous.forPartition(TP2);
+    previousWal2.apply();
+    previousWal2.appendTransaction(Collections.singletonMap(tempFile2, committedFile2));
+    previous.close();
+
+    // Another task recovers only one of them
+    SharedWAL current = new SharedWAL("/logs", storage);
+    WAL wal = current.forPartition(TP2);
+    wal.apply();
+    wal.truncate();
+    current.stop();
+
+    assertTrue(fs.exists(new Path(committedFile2)));
+    assertFalse(fs.exists(new Path(committedFile1)));
+    assertTrue(fs.exists(new Path(tempFile1)));
+    assertTrue(fs.exists(new Path(previous.getLogFile())));
+    assertFalse(fs.exists(new Path(current.getLogFile())));
+  }
+
+  @Test
+  public void testTruncate() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    String tempFile = createTempFile("1");
+    String committedFile = url + "/topics/mytopic/1.avro";
+
+    SharedWAL shared = new SharedWAL("/logs", storage);
+    WAL wal = shared.forPartition(TP1);
+    wal.apply();
+    wal.append(WAL.beginMarker, "");
+    wal.append(tempFile, committedFile);
+    wal.append(WAL.endMarker, "");
+    wal.truncate();
+    shared.close();
+
+    // Entries before the truncate marker are not applied
+    SharedWAL recovered = new SharedWAL("/logs", storage);
+    recovered.forPartition(TP1).apply();
+    recovered.close();
+    assertFalse(fs.exists(new Path(committedFile)));
+  }
+
+  @Test
+  public void testFencePreviousOwner() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    String tempFile = createTempFile("1");
+    String committedFile = url + "/topics/mytopic/1.avro";
+
+    SharedWAL previous = new SharedWAL("/logs", storage);
+    TransactionalWAL previousWal = (TransactionalWAL) previous.forPartition(TP1);
+    previousWal.apply();
+
+    // The topic partition is recovered by another task while the previous one still runs
+    SharedWAL current = new SharedWAL("/logs", storage);
+    WAL currentWal = current.forPartition(TP1);
+    currentWal.apply();
+    currentWal.truncate();
+
+    previousWal.appendTransaction(Collections.singletonMap(tempFile, committedFile));
+    previous.close();
+    current.close();
+
+    // The transaction of the fenced task is not applied by later recoveries
+    SharedWAL recovered = new SharedWAL("/logs", storage);
+    recovered.forPartition(TP1).apply();
+    recovered.close();
+    assertFalse(fs.exists(new Path(committedFile)));
+    assertTrue(fs.exists(new Path(tempFile)));
+  }
+
+  @Test(expected = ConnectException.class)
+  public void testAppendBeforeApply() throws Exception {
+    setUp();
+    HdfsStorage storage = new HdfsStorage(connectorConfig, url);
+    SharedWAL shared = new SharedWAL("/logs", storage);
+    try {
+      shared.forPartition(TP1).append(WAL.beginMarker, "");
+    } finally {
+      shared.close();
+    }
+  }
+
+  private String createTempFile(String name) throws Exception {
+    // HDFS only renames files into existing directories
+    fs.mkdirs(new Path(url + "/topics/mytopic"));
+    fs.mkdirs(new Path(url + "/topics/my-topic"));
+    String tempFile = url + "/tmp/" + name + ".avro";
+    fs.createNewFile(new Path(tempFile));
+    return tempFile;
+  }
+}
@@ -27,7 +27,9 @@ import io.confluent.connect.hdfs.TestWithMiniDFSCluster;
 import io.confluent.connect.storage.common.StorageCommonConfig;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class WALFileTest extends TestWithMiniDFSCluster {
 
@@ -79,6 +81,54 @@ public class WALFileTest extends TestWithMiniDFSCluster {
     fs.deleteOnExit(file);
   }
 
+  @Test
+  public void testAppendCompact() throws Exception {
+    setUp();
+    HdfsSinkConnectorConfig connectorConfig = new HdfsSinkConnectorConfig(properties);
+
+    String topicsDir = connectorConfig.getString(StorageCommonConfig.TOPICS_DIR_CONFIG);
+    TopicPartition topicPart = new TopicPartition("topic", 0);
+    String prefix = url + "/" + topicsDir + "/";
+
+    Path file = new Path(FileUtils.logFileName(url, topicsDir, topicPart));
+
+    WALFile.Writer writer = WALFile.createWriter(
+        connectorConfig,
+        WALFile.Writer.file(file),
+        WALFile.Writer.compactPrefix(prefix)
+    );
+    writer.append(new WALEntry(prefix + "topic/0/+tmp/a"), new WALEntry(prefix + "topic/0/a"));
+    writer.append(new WALEntry(WAL.beginMarker), new WALEntry(""));
+    writer.close();
+
+    // Appending keeps the format of the file
+    writer = WALFile.createWriter(
+        connectorConfig,
+        WALFile.Writer.file(file),
+        WALFile.Writer.appendIfExists(true)
+    );
+    writer.append(new WALEntry(prefix + "topic/0/+tmp/b"), new WALEntry(prefix + "topic/0/b"));
+    writer.hsync();
+    writer.close();
+
+    WALFile.Reader reader = new WALFile.Reader(conf, WALFile.Reader.file(file));
+    WALEntry key = new WALEntry();
+    WALEntry value = new WALEntry();
+    assertTrue(reader.next(key, value));
+    assertEquals(prefix + "topic/0/+tmp/a", key.getName());
+    assertEquals(prefix + "topic/0/a", value.getName());
+    assertTrue(reader.next(key, value));
+    assertEquals(WAL.beginMarker, key.getName());
+    assertEquals("", value.getName());
+    assertTrue(reader.next(key, value));
+    assertEquals(prefix + "topic/0/+tmp/b", key.getName());
+    assertEquals(prefix + "topic/0/b", value.getName());
+    assertFalse(reader.next(key, value));
+    reader.close();
+
+    fs.deleteOnExit(file);
+  }
+
   private void verify2Values(Path file) throws IOException {
     WALEntry key1 = new WALEntry("key1");
     WALEntry val1 = new WALEntry("val1");
@@ -27,12 +27,12 @@ import io.confluent.connect.storage.wal.WAL;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class WALTest extends TestWithMiniDFSCluster {
   private static final String ZERO_PAD_FMT = "%010d";
   private HdfsStorage storage;
 
-  private boolean closed;
   private static final String extension = ".avro";
 
   @Test
@@ -71,24 +71,32 @@ public class WALTest extends TestWithMiniDFSCluster {
     wal1.append(tempfile, committedFile);
     wal1.append(WAL.endMarker, "");
 
-    Thread thread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          // holding the lease for time that is less than wal2's initial retry interval, which is 1000 ms.
-          Thread.sleep(WALConstants.INITIAL_SLEEP_INTERVAL_MS - 100);
-          closed = true;
-          wal1.close();
-        } catch (ConnectException | InterruptedException e) {
-          // Ignored
+    // acquireLease() fails without waiting while wal1 holds the lease, and starts recovering it.
+    try {
+      wal2.acquireLease();
+      fail("Acquired the lease held by another WAL");
+    } catch (ConnectException e) {
+      // expected
+    }
+    try {
+      wal1.close();
+    } catch (ConnectException e) {
+      // The lease of wal1 may already have been revoked
+    }
+
+    // Once the lease is recovered, a later attempt acquires it.
+    long deadline = System.currentTimeMillis() + 30000L;
+    while (true) {
+      try {
+        wal2.acquireLease();
+        break;
+      } catch (ConnectException e) {
+        if (System.currentTimeMillis() > deadline) {
+          throw e;
         }
+        Thread.sleep(100L);
       }
-    });
-    thread.start();
-
-    // acquireLease() will try to acquire the lease that wal1 is holding and fail. It will retry after 1000 ms.
-    wal2.acquireLease();
-    assertTrue(closed);
+    }
     wal2.apply();
     wal2.close();
 